@@ -0,0 +1,106 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.FrameMetrics;
+import android.view.Window;
+import android.widget.ScrollView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// 200 running remotes on the dashboard, flung up and down the ScrollView on a
+// real device: 95% of frames must fit the 60 fps budget, and each draw only
+// touches the rows on screen. Run with ./gradlew connectedAndroidTest.
+@RunWith(AndroidJUnit4.class)
+public class DashboardFrameTest {
+    private static final int FLEET = 200;
+    private static final long SCROLL_MS = 6000;
+    private static final long FRAME_BUDGET_NANOS = 16_700_000L;
+
+    private final List<Long> frameNanos = new ArrayList<>();
+    private ScrollView scroll;
+    private DashboardView dashboard;
+
+    @Test
+    public void twoHundredRunningTilesScrollAtSixtyFps() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        HandlerThread metricsThread = new HandlerThread("frame-metrics");
+        metricsThread.start();
+        Window.OnFrameMetricsAvailableListener listener = (window, metrics, dropped) -> {
+            synchronized (frameNanos) {
+                frameNanos.add(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+            }
+        };
+
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            scenario.onActivity(activity -> show(activity, listener, new Handler(metricsThread.getLooper())));
+            instrumentation.waitForIdleSync();
+            synchronized (frameNanos) {
+                frameNanos.clear();
+            }
+
+            // Alternate flings, each running while the next second boundaries tick by
+            long drawsBefore = dashboard.getTileDrawCount();
+            long framesBefore = dashboard.getFrameCount();
+            long until = SystemClock.uptimeMillis() + SCROLL_MS;
+            int direction = 1;
+            while (SystemClock.uptimeMillis() < until) {
+                int velocity = direction * 8000;
+                instrumentation.runOnMainSync(() -> scroll.fling(velocity));
+                SystemClock.sleep(700);
+                direction = -direction;
+            }
+            instrumentation.waitForIdleSync();
+            long draws = dashboard.getTileDrawCount() - drawsBefore;
+            long frames = dashboard.getFrameCount() - framesBefore;
+            scenario.onActivity(activity -> activity.getWindow().removeOnFrameMetricsAvailableListener(listener));
+
+            // One screen plus the overscan rows, never the whole fleet
+            assertTrue("no dashboard redraws", frames > 0);
+            int perFrame = (int) (draws / frames);
+            assertTrue(perFrame + " tiles per draw", perFrame < FLEET / 2);
+
+            List<Long> sorted;
+            synchronized (frameNanos) {
+                sorted = new ArrayList<>(frameNanos);
+            }
+            assertTrue("only " + sorted.size() + " frames", sorted.size() >= 60);
+            Collections.sort(sorted);
+            long p95 = sorted.get((int) (sorted.size() * 0.95));
+            assertTrue("p95 frame " + p95 / 1000 + " us", p95 <= FRAME_BUDGET_NANOS);
+        } finally {
+            metricsThread.quitSafely();
+        }
+    }
+
+    // Replaces the activity content with a dashboard of FLEET running remotes,
+    // deadlines spread over the second so digits flip on most frames
+    private void show(Activity activity, Window.OnFrameMetricsAvailableListener listener, Handler handler) {
+        TimerEngine engine = new TimerEngine(SystemClock::elapsedRealtime, new TimerStore(FLEET, 60000));
+        int[] ids = new int[FLEET];
+        engine.batch(() -> {
+            for (int id = 1; id <= FLEET; id++) {
+                engine.setDefaultTime(id, 10 * 60 * 1000L + id * 997L % 1000);
+                engine.start(id);
+                ids[id - 1] = id;
+            }
+        });
+        dashboard = new DashboardView(activity);
+        scroll = new ScrollView(activity);
+        scroll.addView(dashboard);
+        activity.setContentView(scroll);
+        dashboard.updateData(engine.snapshot(), ids, FLEET);
+        activity.getWindow().addOnFrameMetricsAvailableListener(listener, handler);
+    }
+}
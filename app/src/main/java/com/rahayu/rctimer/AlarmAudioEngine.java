@@ -0,0 +1,116 @@
+package com.rahayu.rctimer;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+// One streaming AudioTrack fed by a PcmMixer on a dedicated audio thread.
+// The thread sleeps (track paused) while no voice is active.
+public class AlarmAudioEngine {
+    private static final String TAG = "AlarmAudioEngine";
+    public static final int SAMPLE_RATE = 24000; // Rate of the bundled remot_N clips
+    private static final int BLOCK_FRAMES = SAMPLE_RATE / 50; // 20 ms per write
+
+    private final PcmMixer mixer = new PcmMixer(SAMPLE_RATE);
+    private final Object signal = new Object();
+    private Thread thread;
+    private volatile boolean running;
+
+    public AlarmAudioEngine(LatencyStats startLatency) {
+        mixer.setStartLatency(startLatency);
+    }
+
+    public void startVoice(int remoteId, PcmClip clip) {
+        mixer.addVoice(remoteId, clip);
+        ensureThread();
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    public boolean stopVoice(int remoteId) {
+        return mixer.removeVoice(remoteId);
+    }
+
+    public void setGain(int remoteId, float gain) {
+        mixer.setGain(remoteId, gain);
+    }
+
+    // Silences every voice and lets the audio thread release its track and exit
+    public synchronized void shutdown() {
+        running = false;
+        mixer.clear();
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        thread = null;
+    }
+
+    private synchronized void ensureThread() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::runLoop, "AlarmMixer");
+        thread.start();
+    }
+
+    private void runLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioTrack track = buildTrack();
+        short[] block = new short[BLOCK_FRAMES];
+        boolean playing = false;
+
+        try {
+            while (running) {
+                if (mixer.getVoiceCount() == 0) {
+                    if (playing) {
+                        track.pause();
+                        track.flush();
+                        playing = false;
+                    }
+                    synchronized (signal) {
+                        while (running && mixer.getVoiceCount() == 0) {
+                            signal.wait();
+                        }
+                    }
+                    continue;
+                }
+
+                if (!playing) {
+                    track.play();
+                    playing = true;
+                }
+                mixer.mix(block, 0, BLOCK_FRAMES);
+                track.write(block, 0, BLOCK_FRAMES); // Blocks at the device pace
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Mixer thread failed", e);
+        } finally {
+            track.release();
+        }
+    }
+
+    private AudioTrack buildTrack() {
+        int minBuffer = AudioTrack.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(SAMPLE_RATE)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setBufferSizeInBytes(Math.max(minBuffer, BLOCK_FRAMES * 2 * 2));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        return builder.build();
+    }
+}
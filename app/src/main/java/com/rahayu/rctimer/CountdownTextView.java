@@ -0,0 +1,119 @@
+package com.rahayu.rctimer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import androidx.appcompat.widget.AppCompatTextView;
+
+// Timer display that keeps itself current. It is bound once per state change
+// with either a running deadline or a stopped remaining time, and from then on
+// redraws on its own: a Choreographer frame callback is posted for the exact
+// moment the shown second flips (exactly on the boundary, the display rounds
+// up), so every tile on screen turns over on the same frame and 00:00 appears
+// together with the alarm.
+//
+// Nothing is scheduled while the view is stopped, detached or not visible; it
+// catches up on the next attach/visibility change. Text is formatted into a
+// reused char buffer with TimeFormat.
+public class CountdownTextView extends AppCompatTextView {
+    private final char[] chars = new char[TimeFormat.MAX_LENGTH];
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> onFrame();
+
+    private boolean running;
+    private long deadline;   // elapsedRealtime when it hits zero, while running
+    private long remaining;  // Fixed time shown while stopped
+    private long shownSeconds = -1;
+    private boolean scheduled;
+    private boolean visible;
+
+    public CountdownTextView(Context context) {
+        super(context);
+    }
+
+    public CountdownTextView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public CountdownTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    // Counts down to deadline (elapsedRealtime) until rebound
+    public void bindRunning(long deadline) {
+        if (running && this.deadline == deadline) return;
+        running = true;
+        this.deadline = deadline;
+        render(SystemClock.elapsedRealtime());
+        updateScheduling();
+    }
+
+    // Shows a fixed remaining time (paused, idle or alarming)
+    public void bindStopped(long remaining) {
+        running = false;
+        this.remaining = remaining;
+        render(0);
+        updateScheduling();
+    }
+
+    public void bind(TimerSnapshot snapshot, int remoteId) {
+        if (snapshot.isRunning(remoteId)) {
+            bindRunning(snapshot.getDeadline(remoteId));
+        } else {
+            bindStopped(snapshot.getRemaining(remoteId, 0));
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateScheduling();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        updateScheduling();
+    }
+
+    // Covers our own visibility, ancestors' and the window's (minSdk 24)
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        visible = isVisible;
+        updateScheduling();
+    }
+
+    private void onFrame() {
+        scheduled = false;
+        long now = SystemClock.elapsedRealtime();
+        render(now);
+        updateScheduling();
+    }
+
+    private void render(long now) {
+        long left = running ? Math.max(0, deadline - now) : remaining;
+        long shown = TimeFormat.displaySeconds(left);
+        if (shown == shownSeconds) return;
+        shownSeconds = shown;
+        int length = TimeFormat.format(left, chars);
+        setText(chars, 0, length);
+    }
+
+    private void updateScheduling() {
+        boolean wanted = running && visible && isAttachedToWindow();
+        Choreographer choreographer = Choreographer.getInstance();
+        if (scheduled) {
+            choreographer.removeFrameCallback(frameCallback);
+            scheduled = false;
+        }
+        if (!wanted) return;
+        long now = SystemClock.elapsedRealtime();
+        // A stale second (after being offscreen) is caught up here before waiting again
+        render(now);
+        long left = deadline - now;
+        if (left <= 0) return; // Stays at 00:00, the service rebinds it as alarming
+        scheduled = true;
+        choreographer.postFrameCallbackDelayed(frameCallback, TimeFormat.nextChangeDelay(left));
+    }
+}
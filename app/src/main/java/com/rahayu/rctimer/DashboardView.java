@@ -0,0 +1,455 @@
+package com.rahayu.rctimer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import java.util.Arrays;
+
+// Dashboard mode for large fleets: every visible remote is drawn as a tile on
+// one Canvas instead of a RecyclerView item of nested views. Tiles sit in a
+// fixed grid, so position -> rect and touch -> tile are plain arithmetic.
+//
+// Text is prepared once and reused: the "REMOT n" string per id,
+// button label widths, and the timer digits as a char[] per tile, measured with
+// tabular figures so every "mm:ss" has the same width.
+//
+// Only the rows on screen (plus one on each side) are drawn, ticked and
+// scheduled, worked out from getLocalVisibleRect rather than the canvas clip:
+// with hardware acceleration the clip is always the whole view and a scroll
+// replays the last recorded frame without calling onDraw. So the view listens
+// for scrolls and redraws when a different set of rows comes on screen, and a
+// tick (a Choreographer frame callback at the next second boundary of a
+// visible running tile) redraws the view once if any visible digits flipped.
+// The cost per frame follows the rows on screen, not the fleet size.
+public class DashboardView extends View {
+    private static final int MIN_COLUMNS = 2;
+    private static final float MIN_TILE_DP = 150;
+    private static final float TILE_HEIGHT_DP = 128;
+    private static final float GAP_DP = 8;
+
+    private static final int COLOR_CARD = 0xFFD7CCC8;
+    private static final int COLOR_TEXT = 0xFF4E342E;
+    private static final int COLOR_DIVIDER = 0xFFA1887F;
+    private static final int COLOR_START = 0xFF388E3C;
+    private static final int COLOR_PAUSE = 0xFFFFA000;
+    private static final int COLOR_RESET = 0xFF3E2723;
+    private static final int COLOR_STOP = 0xFFBF360C;
+
+    private static final String LABEL_START = "START";
+    private static final String LABEL_PAUSE = "PAUSE";
+    private static final String LABEL_RESET = "RESET";
+    private static final String LABEL_STOP = "STOP ALARM";
+
+    private RemoteAdapter.ActionListener actionListener;
+    private TimerSnapshot snapshot;
+
+    // Per tile (position) caches
+    private int[] ids = new int[0];
+    private int count;
+    private long[] shownSeconds = new long[0];
+    private char[] timerChars = new char[0]; // TimeFormat.MAX_LENGTH chars per tile
+    private int[] timerLength = new int[0];
+    private int[] positionById = new int[0]; // Remote id -> position + 1 (0 = not shown)
+
+    // Per remote id caches
+    private String[] names = new String[0];
+
+    private final Paint cardPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint namePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint timerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float[] timerWidthByLength = new float[TimeFormat.MAX_LENGTH + 1];
+    private final char[] formatBuffer = new char[TimeFormat.MAX_LENGTH];
+    private float labelStartWidth, labelPauseWidth, labelResetWidth, labelStopWidth;
+
+    // Grid metrics
+    private final float density;
+    private final float gap;
+    private final float tileHeight;
+    private final float radius;
+    private int columns = MIN_COLUMNS;
+    private float tileWidth;
+
+    private final RectF tile = new RectF();
+    private final RectF button = new RectF();
+    private final Rect visibleRect = new Rect();
+    private final GestureDetector gestures;
+
+    // Row range on screen (updateVisibleRows) and the one the last onDraw recorded
+    private int firstRow;
+    private int lastRow = -1;
+    private int drawnFirstRow;
+    private int drawnLastRow = -1;
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> onFrame();
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener = this::onScrolled;
+    private boolean tickScheduled;
+    private boolean visible;
+
+    // Redraw accounting
+    private long frames;
+    private long tileDraws;
+
+    public DashboardView(Context context) {
+        this(context, null);
+    }
+
+    public DashboardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = getResources().getDisplayMetrics().density;
+        float scaled = getResources().getDisplayMetrics().scaledDensity;
+        gap = GAP_DP * density;
+        tileHeight = TILE_HEIGHT_DP * density;
+        radius = 12 * density;
+
+        cardPaint.setColor(COLOR_CARD);
+        namePaint.setColor(COLOR_TEXT);
+        namePaint.setTextSize(16 * scaled);
+        namePaint.setTypeface(Typeface.DEFAULT_BOLD);
+        timerPaint.setColor(COLOR_TEXT);
+        timerPaint.setTextSize(32 * scaled);
+        timerPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        timerPaint.setFontFeatureSettings("tnum"); // Tabular digits, width only depends on length
+        labelPaint.setColor(Color.WHITE);
+        labelPaint.setTextSize(12 * scaled);
+        labelPaint.setTypeface(Typeface.DEFAULT_BOLD);
+
+        // "mm:ss" and "hh:mm:ss" are the only two shapes
+        measureTimerWidth(0);
+        measureTimerWidth(3600000L);
+        labelStartWidth = labelPaint.measureText(LABEL_START);
+        labelPauseWidth = labelPaint.measureText(LABEL_PAUSE);
+        labelResetWidth = labelPaint.measureText(LABEL_RESET);
+        labelStopWidth = labelPaint.measureText(LABEL_STOP);
+
+        gestures = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                return onTap(e.getX(), e.getY());
+            }
+
+            @Override
+            public void onLongPress(MotionEvent e) {
+                int position = positionAt(e.getX(), e.getY());
+                if (position >= 0) {
+                    RemoteAdapter.showEditTimeDialog(getContext(), ids[position], actionListener);
+                }
+            }
+        });
+    }
+
+    public void setActionListener(RemoteAdapter.ActionListener listener) {
+        this.actionListener = listener;
+    }
+
+    // Replaces the visible set (ids[0..count)), same contract as RemoteAdapter.updateData
+    public void updateData(TimerSnapshot newSnapshot, int[] newIds, int newCount) {
+        snapshot = newSnapshot;
+        if (ids.length < newCount) {
+            ids = new int[newCount];
+            shownSeconds = new long[newCount];
+            timerLength = new int[newCount];
+            timerChars = new char[newCount * TimeFormat.MAX_LENGTH];
+        }
+        System.arraycopy(newIds, 0, ids, 0, newCount);
+        boolean countChanged = count != newCount;
+        count = newCount;
+
+        int maxId = newSnapshot.size();
+        if (positionById.length <= maxId) positionById = new int[maxId + 1];
+        else Arrays.fill(positionById, 0);
+        if (names.length <= maxId) {
+            names = Arrays.copyOf(names, maxId + 1);
+        }
+        for (int i = 0; i < count; i++) {
+            positionById[ids[i]] = i + 1;
+            shownSeconds[i] = -1;
+            formatTimer(i, SystemClock.elapsedRealtime());
+        }
+        if (countChanged) requestLayout();
+        invalidate();
+        scheduleTick();
+    }
+
+    // Coalesced service changes (state transitions); one redraw if any changed tile is shown
+    public void applyChanges(TimerSnapshot newSnapshot, ChangeSet changes) {
+        snapshot = newSnapshot;
+        long now = SystemClock.elapsedRealtime();
+        boolean onScreen = false;
+        updateVisibleRows();
+        for (int i = 0, n = changes.size(); i < n; i++) {
+            int id = changes.idAt(i);
+            int position = id < positionById.length ? positionById[id] - 1 : -1;
+            if (position < 0) continue;
+            shownSeconds[position] = -1;
+            formatTimer(position, now);
+            int row = position / columns;
+            if (row >= firstRow && row <= lastRow) onScreen = true;
+        }
+        if (onScreen) invalidate();
+        scheduleTick();
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getTileDrawCount() {
+        return tileDraws;
+    }
+
+    // --- Self ticking ---
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        scheduleTick();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+        scheduleTick();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        visible = isVisible;
+        if (isVisible) invalidate(); // Rows may have ticked or moved while hidden
+        scheduleTick();
+    }
+
+    // Any scroll in the window: redraw once a different set of rows is on screen.
+    // Rows coming into view are formatted fresh in onDraw.
+    private void onScrolled() {
+        if (!updateVisibleRows()) return;
+        if (firstRow != drawnFirstRow || lastRow != drawnLastRow) {
+            invalidate();
+            scheduleTick();
+        }
+    }
+
+    // Rows intersecting the visible part of the view, one extra on each side so a
+    // fling never reaches an undrawn edge before the next redraw; false if none
+    private boolean updateVisibleRows() {
+        if (count == 0 || !getLocalVisibleRect(visibleRect)) {
+            firstRow = 0;
+            lastRow = -1;
+            return false;
+        }
+        float rowHeight = tileHeight + gap;
+        firstRow = Math.max(0, (int) ((visibleRect.top - gap) / rowHeight) - 1);
+        lastRow = Math.min((count - 1) / columns, (int) (visibleRect.bottom / rowHeight) + 1);
+        return firstRow <= lastRow;
+    }
+
+    // Flips the digits of visible running tiles, one redraw if any changed
+    private void onFrame() {
+        tickScheduled = false;
+        if (snapshot != null && updateVisibleRows()) {
+            long now = SystemClock.elapsedRealtime();
+            boolean changed = false;
+            for (int position = firstRow * columns, end = Math.min(count, (lastRow + 1) * columns); position < end; position++) {
+                if (snapshot.isRunning(ids[position]) && formatTimer(position, now)) changed = true;
+            }
+            if (changed) invalidate();
+        }
+        scheduleTick();
+    }
+
+    // Posts one frame callback for the soonest second boundary among visible running tiles
+    private void scheduleTick() {
+        Choreographer choreographer = Choreographer.getInstance();
+        if (tickScheduled) {
+            choreographer.removeFrameCallback(frameCallback);
+            tickScheduled = false;
+        }
+        if (snapshot == null || !visible || !isAttachedToWindow() || !updateVisibleRows()) return;
+        long now = SystemClock.elapsedRealtime();
+        long delay = Long.MAX_VALUE;
+        for (int position = firstRow * columns, end = Math.min(count, (lastRow + 1) * columns); position < end; position++) {
+            int id = ids[position];
+            if (!snapshot.isRunning(id)) continue;
+            long left = snapshot.getDeadline(id) - now;
+            if (left <= 0) continue; // Shows 00:00 until the service reports the alarm
+            delay = Math.min(delay, TimeFormat.nextChangeDelay(left));
+        }
+        if (delay == Long.MAX_VALUE) return;
+        tickScheduled = true;
+        choreographer.postFrameCallbackDelayed(frameCallback, delay);
+    }
+
+    // Reformats the tile's digits if its displayed second changed; true if it did
+    private boolean formatTimer(int position, long now) {
+        long remaining = snapshot.getRemaining(ids[position], now);
+        long shown = TimeFormat.displaySeconds(remaining);
+        if (shown == shownSeconds[position]) return false;
+        shownSeconds[position] = shown;
+        int length = TimeFormat.format(remaining, formatBuffer);
+        System.arraycopy(formatBuffer, 0, timerChars, position * TimeFormat.MAX_LENGTH, length);
+        timerLength[position] = length;
+        return true;
+    }
+
+    private void measureTimerWidth(long millis) {
+        int length = TimeFormat.format(millis, formatBuffer);
+        timerWidthByLength[length] = timerPaint.measureText(formatBuffer, 0, length);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        columns = Math.max(MIN_COLUMNS, (int) ((width - gap) / (MIN_TILE_DP * density + gap)));
+        tileWidth = (width - gap * (columns + 1)) / columns;
+        int rows = (count + columns - 1) / columns;
+        int height = (int) Math.ceil(rows * (tileHeight + gap) + gap);
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (snapshot == null || !updateVisibleRows()) return;
+        frames++;
+        long startNanos = System.nanoTime();
+        long now = SystemClock.elapsedRealtime();
+
+        // Only the rows on screen; onScrolled redraws when that range changes
+        drawnFirstRow = firstRow;
+        drawnLastRow = lastRow;
+        for (int position = firstRow * columns, end = Math.min(count, (lastRow + 1) * columns); position < end; position++) {
+            tileRect(position, tile);
+            drawTile(canvas, position, now);
+        }
+        TimerMetrics.get().getDashboardDraw().record(System.nanoTime() - startNanos);
+    }
+
+    private void drawTile(Canvas canvas, int position, long now) {
+        tileDraws++;
+        int id = ids[position];
+        byte state = snapshot.getState(id);
+        float pad = 12 * density;
+
+        canvas.drawRoundRect(tile, radius, radius, cardPaint);
+
+        // Header: name and status dot
+        if (names[id] == null) names[id] = "REMOT " + id;
+        float baseline = tile.top + pad - namePaint.ascent();
+        canvas.drawText(names[id], tile.left + pad, baseline, namePaint);
+        fillPaint.setColor(state == TimerStore.STATE_ALARMING ? COLOR_STOP
+                : state == TimerStore.STATE_RUNNING ? COLOR_START : Color.GRAY);
+        canvas.drawCircle(tile.right - pad - 5 * density, baseline + namePaint.ascent() / 2, 5 * density, fillPaint);
+
+        float dividerY = baseline + namePaint.descent() + 6 * density;
+        fillPaint.setColor(COLOR_DIVIDER);
+        canvas.drawRect(tile.left + pad, dividerY, tile.right - pad, dividerY + density, fillPaint);
+
+        // Timer digits, centered with the cached width for this length (refreshed
+        // here too, for rows that were offscreen when their second flipped)
+        if (state == TimerStore.STATE_RUNNING) formatTimer(position, now);
+        int length = timerLength[position];
+        float timerBaseline = tile.top + tileHeight * 0.30f - timerPaint.ascent();
+        canvas.drawText(timerChars, position * TimeFormat.MAX_LENGTH, length,
+                tile.centerX() - timerWidthByLength[length] / 2, timerBaseline, timerPaint);
+
+        // Buttons
+        float buttonTop = tile.bottom - pad - 32 * density;
+        if (state == TimerStore.STATE_ALARMING) {
+            button.set(tile.left + pad, buttonTop, tile.right - pad, tile.bottom - pad);
+            drawButton(canvas, COLOR_STOP, LABEL_STOP, labelStopWidth);
+        } else {
+            startButtonRect(tile, button);
+            boolean running = state == TimerStore.STATE_RUNNING;
+            drawButton(canvas, running ? COLOR_PAUSE : COLOR_START,
+                    running ? LABEL_PAUSE : LABEL_START, running ? labelPauseWidth : labelStartWidth);
+            resetButtonRect(tile, button);
+            drawButton(canvas, COLOR_RESET, LABEL_RESET, labelResetWidth);
+        }
+    }
+
+    private void drawButton(Canvas canvas, int color, String label, float labelWidth) {
+        fillPaint.setColor(color);
+        canvas.drawRoundRect(button, 4 * density, 4 * density, fillPaint);
+        float baseline = button.centerY() - (labelPaint.ascent() + labelPaint.descent()) / 2;
+        canvas.drawText(label, button.centerX() - labelWidth / 2, baseline, labelPaint);
+    }
+
+    private void tileRect(int position, RectF out) {
+        int row = position / columns;
+        int col = position % columns;
+        float left = gap + col * (tileWidth + gap);
+        float top = gap + row * (tileHeight + gap);
+        out.set(left, top, left + tileWidth, top + tileHeight);
+    }
+
+    private void startButtonRect(RectF tile, RectF out) {
+        float pad = 12 * density;
+        out.set(tile.left + pad, tile.bottom - pad - 32 * density, tile.centerX() - 4 * density, tile.bottom - pad);
+    }
+
+    private void resetButtonRect(RectF tile, RectF out) {
+        float pad = 12 * density;
+        out.set(tile.centerX() + 4 * density, tile.bottom - pad - 32 * density, tile.right - pad, tile.bottom - pad);
+    }
+
+    // --- Touch ---
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return gestures.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    private int positionAt(float x, float y) {
+        int col = (int) ((x - gap) / (tileWidth + gap));
+        int row = (int) ((y - gap) / (tileHeight + gap));
+        if (col < 0 || col >= columns || row < 0) return -1;
+        int position = row * columns + col;
+        if (position >= count) return -1;
+        tileRect(position, tile);
+        return tile.contains(x, y) ? position : -1;
+    }
+
+    private boolean onTap(float x, float y) {
+        int position = positionAt(x, y);
+        if (position < 0 || actionListener == null) return false;
+        int id = ids[position];
+        float pad = 12 * density;
+        if (snapshot.isAlarming(id)) {
+            if (y >= tile.bottom - pad - 32 * density) {
+                actionListener.onStopAlarm(id);
+                return true;
+            }
+            return false;
+        }
+        startButtonRect(tile, button);
+        if (button.contains(x, y)) {
+            actionListener.onStartPause(id);
+            return true;
+        }
+        resetButtonRect(tile, button);
+        if (button.contains(x, y)) {
+            actionListener.onReset(id);
+            return true;
+        }
+        return false;
+    }
+}
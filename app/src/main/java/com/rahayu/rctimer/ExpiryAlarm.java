@@ -0,0 +1,63 @@
+package com.rahayu.rctimer;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+// Keeps exactly one AlarmManager alarm armed for the earliest running deadline,
+// so expiry fires on time under Doze even while the tick loop is parked or throttled.
+public class ExpiryAlarm {
+    public static final String ACTION_EXPIRE = "com.rahayu.rctimer.EXPIRE";
+    private static final long NOT_ARMED = -1;
+
+    private final AlarmManager alarmManager;
+    private final PendingIntent expireIntent;
+    private long armedDeadline = NOT_ARMED;
+
+    public ExpiryAlarm(Context context) {
+        alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+        Intent intent = new Intent(context, TimerService.class);
+        intent.setAction(ACTION_EXPIRE);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            expireIntent = PendingIntent.getForegroundService(context, 0, intent, flags);
+        } else {
+            expireIntent = PendingIntent.getService(context, 0, intent, flags);
+        }
+    }
+
+    // deadline is in SystemClock.elapsedRealtime() time base, or -1 when nothing is running
+    public void rearm(long deadline) {
+        if (deadline == armedDeadline) return; // Already armed for this deadline
+
+        if (deadline < 0) {
+            cancel();
+            return;
+        }
+
+        // Same PendingIntent, so this replaces any previously armed alarm
+        if (canScheduleExact()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, expireIntent);
+        } else {
+            Log.w("ExpiryAlarm", "Exact alarms not permitted, falling back to inexact");
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, expireIntent);
+        }
+        armedDeadline = deadline;
+    }
+
+    public void cancel() {
+        alarmManager.cancel(expireIntent);
+        armedDeadline = NOT_ARMED;
+    }
+
+    private boolean canScheduleExact() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return alarmManager.canScheduleExactAlarms();
+        }
+        return true;
+    }
+}
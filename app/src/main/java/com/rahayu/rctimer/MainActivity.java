@@ -1,20 +1,24 @@
 package com.rahayu.rctimer;
 
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.provider.Settings;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CompoundButton;
 import android.widget.EditText;
 import android.widget.LinearLayout;
+import android.widget.RadioGroup;
 import android.widget.Switch;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -22,40 +26,98 @@ import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.SimpleItemAnimator;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity implements RemoteAdapter.ActionListener {
+public class MainActivity extends AppCompatActivity implements RemoteAdapter.ActionListener, TimerService.StateListener {
 
     private DrawerLayout drawerLayout;
     private RecyclerView recyclerView;
     private RemoteAdapter adapter;
+    private DashboardView dashboardView;
+    private View dashboardScroll;
+    private boolean dashboardMode;
     private LinearLayout switchesContainer;
     private EditText inputDefaultTimer;
-    private TimerReceiver timerReceiver;
+    private EditText inputFleetSize;
+    private RadioGroup radioAlarmPolicy;
+    private TextView textDailyReport;
+    private View debugPanel;
+    private TextView textMetrics;
+    private Switch switchLanSync;
+    private TextView textSyncStatus;
+    private TimerService timerService;
     
+    public static final String PREF_DASHBOARD_MODE = "dashboard_mode";
+
+    // "+5 menit" bulk extension
+    private static final long EXTEND_MILLIS = 5 * 60 * 1000L;
+
     private SharedPreferences prefs;
+    private final VisibilitySet visibility = new VisibilitySet();
+    private int[] visibleIds = new int[0];
+    private int[] selectedIds = new int[0];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         
-        prefs = getSharedPreferences("RahayuPrefs", MODE_PRIVATE);
+        prefs = getSharedPreferences(TimerService.PREFS_NAME, MODE_PRIVATE);
 
         // UI Initialization
         drawerLayout = findViewById(R.id.drawer_layout);
         recyclerView = findViewById(R.id.recycler_timers);
         switchesContainer = findViewById(R.id.switches_container);
         inputDefaultTimer = findViewById(R.id.input_default_timer);
+        inputFleetSize = findViewById(R.id.input_fleet_size);
+        inputFleetSize.setText(String.valueOf(getFleetSize()));
+        radioAlarmPolicy = findViewById(R.id.radio_alarm_policy);
+        radioAlarmPolicy.check(policyRadioId(SoundManager.getInstance(this).getPolicy()));
+        textDailyReport = findViewById(R.id.text_daily_report);
+        debugPanel = findViewById(R.id.debug_panel);
+        textMetrics = findViewById(R.id.text_metrics);
         Button btnSaveSettings = findViewById(R.id.btn_save_settings);
         View btnMenu = findViewById(R.id.btn_menu);
 
         // RecyclerView Setup
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
-        adapter = new RemoteAdapter(this, new ArrayList<>(), this);
+        adapter = new RemoteAdapter(this, this);
         recyclerView.setAdapter(adapter);
+        // Tiles are rebound in place, a cross-fade on every state change just flickers
+        ((SimpleItemAnimator) recyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
+
+        // Dashboard mode draws every tile in one view instead of the RecyclerView
+        dashboardView = findViewById(R.id.dashboard_view);
+        dashboardView.setActionListener(this);
+        dashboardScroll = findViewById(R.id.dashboard_scroll);
+        Switch switchDashboard = findViewById(R.id.switch_dashboard_mode);
+        switchDashboard.setChecked(prefs.getBoolean(PREF_DASHBOARD_MODE, false));
+        setDashboardMode(switchDashboard.isChecked());
+        switchDashboard.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            prefs.edit().putBoolean(PREF_DASHBOARD_MODE, isChecked).apply();
+            setDashboardMode(isChecked);
+            updateVisibleList();
+        });
+
+        // LAN sync keeps several phones on the same Wi-Fi showing the same timers
+        switchLanSync = findViewById(R.id.switch_lan_sync);
+        textSyncStatus = findViewById(R.id.text_sync_status);
+        switchLanSync.setChecked(prefs.getBoolean(TimerService.PREF_LAN_SYNC, false));
+        switchLanSync.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (timerService != null) {
+                timerService.setLanSyncEnabled(isChecked);
+            } else {
+                prefs.edit().putBoolean(TimerService.PREF_LAN_SYNC, isChecked).apply();
+            }
+            refreshSyncStatus();
+        });
+        refreshSyncStatus();
 
         // Sidebar Toggles Generation
         setupSidebar();
@@ -63,9 +125,43 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         // Menu Button
         btnMenu.setOnClickListener(v -> drawerLayout.openDrawer(GravityCompat.START));
 
+        // Refresh the daily report each time the sidebar is opened
+        drawerLayout.addDrawerListener(new DrawerLayout.SimpleDrawerListener() {
+            @Override
+            public void onDrawerOpened(View drawerView) {
+                if (timerService != null) timerService.requestDailyReport(MainActivity.this::showDailyReport);
+                refreshSyncStatus();
+                if (debugPanel.getVisibility() == View.VISIBLE) refreshMetrics();
+            }
+        });
+
+        // Hidden debug panel, toggled by a long press on the report title
+        findViewById(R.id.title_daily_report).setOnLongClickListener(v -> {
+            boolean show = debugPanel.getVisibility() != View.VISIBLE;
+            debugPanel.setVisibility(show ? View.VISIBLE : View.GONE);
+            if (show) refreshMetrics();
+            return true;
+        });
+        findViewById(R.id.btn_export_metrics).setOnClickListener(v -> exportMetrics());
+        findViewById(R.id.btn_reset_metrics).setOnClickListener(v -> {
+            TimerMetrics.get().reset();
+            refreshMetrics();
+        });
+
         // Save Settings
         btnSaveSettings.setOnClickListener(v -> saveSettings());
 
+        // Bulk actions apply to the remotes currently shown
+        findViewById(R.id.btn_start_visible).setOnClickListener(v -> startVisible());
+        findViewById(R.id.btn_extend_running).setOnClickListener(v -> extendRunning(EXTEND_MILLIS));
+        findViewById(R.id.btn_reset_expired).setOnClickListener(v -> {
+            if (timerService != null) {
+                timerService.getCommandBus().resetAllExpired();
+            } else {
+                sendCommand(TimerService.CMD_RESET_EXPIRED, -1);
+            }
+        });
+
         // Start Service
         Intent serviceIntent = new Intent(this, TimerService.class);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -76,24 +172,28 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         
         // Request Overlay Permission
         checkOverlayPermission();
+        checkNotificationPermission();
     }
 
     private void setupSidebar() {
         switchesContainer.removeAllViews();
-        for (int i = 1; i <= 10; i++) {
+        int fleetSize = getFleetSize();
+        for (int i = 1; i <= fleetSize; i++) {
             Switch sw = new Switch(this);
             sw.setText("Tampilkan Remot " + i);
             sw.setTextColor(getResources().getColor(R.color.brown_text));
             sw.setTextSize(16);
             sw.setPadding(0, 10, 0, 10);
             
-            // Load state
+            // Load state (once, the bitset is the source of truth afterwards)
             boolean isVisible = prefs.getBoolean("visible_remot_" + i, true);
+            visibility.setVisible(i, isVisible);
             sw.setChecked(isVisible);
             
             final int remoteId = i;
             sw.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                prefs.edit().putBoolean("visible_remot_" + remoteId, isChecked).apply();
+                visibility.setVisible(remoteId, isChecked);
+                prefs.edit().putBoolean("visible_remot_" + remoteId, isChecked).apply(); // Written to disk in the background
                 updateVisibleList();
             });
             
@@ -101,24 +201,37 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         }
     }
     
+    private int getFleetSize() {
+        return prefs.getInt(TimerService.PREF_FLEET_SIZE, TimerService.DEFAULT_FLEET_SIZE);
+    }
+
     private void updateVisibleList() {
-        // Filter list based on preferences
-        // Since Service holds the master data, actually we mostly just filter what we SHOW in adapter.
-        // However, TimerService.remotes has all models. We create a subset.
-        // Note: For simplicity, we are just syncing adapter. In a real MVVM, we'd observe LiveData.
-        
-        List<RemoteModel> allModels = TimerService.remotes;
-        if (allModels == null || allModels.isEmpty()) return;
-
-        List<RemoteModel> visibleModels = new ArrayList<>();
-        for (RemoteModel m : allModels) {
-            boolean isVisible = prefs.getBoolean("visible_remot_" + m.getId(), true);
-            m.setVisible(isVisible); // Update model property just in case
-            if (isVisible) {
-                visibleModels.add(m);
-            }
+        // Service holds the master data, we only filter what we SHOW in the adapter.
+        TimerSnapshot snapshot = currentSnapshot();
+        if (snapshot == null) return;
+
+        long startNanos = System.nanoTime();
+        if (visibleIds.length < snapshot.size()) {
+            visibleIds = new int[snapshot.size()];
         }
-        adapter.updateData(visibleModels);
+        int count = visibility.fillVisibleIds(snapshot.size(), visibleIds);
+        if (dashboardMode) {
+            dashboardView.updateData(snapshot, visibleIds, count);
+        } else {
+            adapter.updateData(snapshot, visibleIds, count);
+        }
+        TimerMetrics.get().getListUpdate().record(System.nanoTime() - startNanos);
+    }
+
+    // Latest fleet state from the bound service, null until it is bound
+    private TimerSnapshot currentSnapshot() {
+        return timerService != null ? timerService.getSnapshot() : null;
+    }
+
+    private void setDashboardMode(boolean enabled) {
+        dashboardMode = enabled;
+        recyclerView.setVisibility(enabled ? View.GONE : View.VISIBLE);
+        dashboardScroll.setVisibility(enabled ? View.VISIBLE : View.GONE);
     }
 
     private void saveSettings() {
@@ -126,9 +239,117 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         if (!timerStr.isEmpty()) {
             int mins = Integer.parseInt(timerStr);
             // Update all defaults logic if needed, or just save preference
-            Toast.makeText(this, "Pengaturan Disimpan", Toast.LENGTH_SHORT).show();
-            drawerLayout.closeDrawer(GravityCompat.START);
         }
+
+        String fleetStr = inputFleetSize.getText().toString();
+        if (!fleetStr.isEmpty()) {
+            int size = Math.max(1, Math.min(TimerStore.MAX_FLEET_SIZE, Integer.parseInt(fleetStr)));
+            if (size != getFleetSize()) {
+                prefs.edit().putInt(TimerService.PREF_FLEET_SIZE, size).apply();
+                if (timerService != null) {
+                    timerService.getCommandBus().setFleetSize(size);
+                } else {
+                    Intent intent = commandIntent(TimerService.CMD_SET_FLEET_SIZE, -1);
+                    intent.putExtra(TimerService.EXTRA_FLEET_SIZE, size);
+                    startService(intent);
+                }
+                setupSidebar();
+            }
+            inputFleetSize.setText(String.valueOf(size));
+        }
+
+        AlarmDispatcher.Policy policy = policyForRadioId(radioAlarmPolicy.getCheckedRadioButtonId());
+        prefs.edit().putString(SoundManager.PREF_ALARM_POLICY, policy.name()).apply();
+        SoundManager.getInstance(this).setPolicy(policy);
+
+        Toast.makeText(this, "Pengaturan Disimpan", Toast.LENGTH_SHORT).show();
+        drawerLayout.closeDrawer(GravityCompat.START);
+    }
+
+    private void startVisible() {
+        if (timerService == null) return;
+        int count = fillSelected(false);
+        timerService.getCommandBus().startSelected(selectedIds, count);
+    }
+
+    private void extendRunning(long millis) {
+        if (timerService == null) return;
+        int count = fillSelected(true);
+        timerService.getCommandBus().extendSelected(selectedIds, count, millis);
+    }
+
+    // Visible remote ids (optionally only running ones) into selectedIds, returns the count
+    private int fillSelected(boolean runningOnly) {
+        TimerSnapshot snapshot = currentSnapshot();
+        if (snapshot == null) return 0;
+        if (selectedIds.length < snapshot.size()) {
+            selectedIds = new int[snapshot.size()];
+        }
+        int count = visibility.fillVisibleIds(snapshot.size(), selectedIds);
+        if (!runningOnly) return count;
+        int running = 0;
+        for (int i = 0; i < count; i++) {
+            if (snapshot.isRunning(selectedIds[i])) selectedIds[running++] = selectedIds[i];
+        }
+        return running;
+    }
+
+    private void showDailyReport(SessionLog.Summary summary) {
+        if (summary.sessions == 0) {
+            textDailyReport.setText("Belum ada sesi");
+            return;
+        }
+        long minutes = summary.billedMillis / 60000;
+        textDailyReport.setText(String.format(Locale.US,
+                "Sesi: %d\nTotal sewa: %dj %02dm\nUtilisasi: %.0f%%\nRata-rata respon alarm: %d dtk",
+                summary.sessions, minutes / 60, minutes % 60,
+                summary.getUtilisation(getFleetSize()) * 100,
+                summary.getMeanAckMillis() / 1000));
+    }
+
+    private void refreshSyncStatus() {
+        if (!switchLanSync.isChecked()) {
+            textSyncStatus.setText("Mati");
+            return;
+        }
+        int peers = timerService != null ? timerService.getSyncPeerCount() : 0;
+        textSyncStatus.setText(peers > 0 ? "Terhubung ke " + peers + " HP lain" : "Mencari HP lain di Wi-Fi yang sama...");
+    }
+
+    private void refreshMetrics() {
+        if (timerService != null) {
+            textMetrics.setText(timerService.exportMetrics(false));
+        } else {
+            StringBuilder text = new StringBuilder();
+            TimerMetrics.get().appendText(text);
+            textMetrics.setText(text);
+        }
+    }
+
+    // Writes the JSON export to the app's external files dir (adb pull friendly)
+    private void exportMetrics() {
+        if (timerService == null) return;
+        File file = new File(getExternalFilesDir(null), "metrics-" + System.currentTimeMillis() + ".json");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(timerService.exportMetrics(true).getBytes(StandardCharsets.UTF_8));
+            Toast.makeText(this, "Tersimpan: " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Gagal ekspor: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private static int policyRadioId(AlarmDispatcher.Policy policy) {
+        switch (policy) {
+            case ROUND_ROBIN: return R.id.radio_policy_round_robin;
+            case FIFO: return R.id.radio_policy_fifo;
+            default: return R.id.radio_policy_mix;
+        }
+    }
+
+    private static AlarmDispatcher.Policy policyForRadioId(int id) {
+        if (id == R.id.radio_policy_round_robin) return AlarmDispatcher.Policy.ROUND_ROBIN;
+        if (id == R.id.radio_policy_fifo) return AlarmDispatcher.Policy.FIFO;
+        return AlarmDispatcher.Policy.MIX_ALL;
     }
 
     private void checkOverlayPermission() {
@@ -141,18 +362,54 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         }
     }
 
+    // Countdown and alarm notifications need this on Android 13+
+    private void checkNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(android.Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{android.Manifest.permission.POST_NOTIFICATIONS}, 102);
+        }
+    }
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            timerService = ((TimerService.LocalBinder) service).getService();
+            timerService.registerListener(MainActivity.this);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            timerService = null;
+        }
+    };
+
     @Override
     protected void onResume() {
         super.onResume();
-        timerReceiver = new TimerReceiver();
-        registerReceiver(timerReceiver, new IntentFilter(TimerService.ACTION_UPDATE_UI), Context.RECEIVER_NOT_EXPORTED);
+        bindService(new Intent(this, TimerService.class), serviceConnection, Context.BIND_AUTO_CREATE);
         updateVisibleList(); // Initial sync
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        unregisterReceiver(timerReceiver);
+        if (timerService != null) {
+            timerService.unregisterListener(this);
+            timerService = null;
+        }
+        unbindService(serviceConnection);
+    }
+
+    // Coalesced state changes from the bound service (main thread)
+    @Override
+    public void onTimersChanged(TimerSnapshot snapshot, ChangeSet changes) {
+        if (changes.isFleetChanged()) {
+            updateVisibleList();
+        } else if (dashboardMode) {
+            dashboardView.applyChanges(snapshot, changes);
+        } else {
+            adapter.applyChanges(snapshot, changes);
+        }
     }
 
     // Adapter Actions
@@ -163,9 +420,9 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
         // We check current local state or let service handle toggle?
         // Service command 'CMD_START' forces start. We need toggle logic.
         // Easier: Just check the model in the list.
-        RemoteModel m = findRemoteById(remoteId);
-        if (m != null) {
-            String cmd = m.isRunning() ? TimerService.CMD_PAUSE : TimerService.CMD_START;
+        TimerSnapshot snapshot = currentSnapshot();
+        if (snapshot != null && snapshot.contains(remoteId)) {
+            String cmd = snapshot.isRunning(remoteId) ? TimerService.CMD_PAUSE : TimerService.CMD_START;
             sendCommand(cmd, remoteId);
         }
     }
@@ -182,41 +439,36 @@ public class MainActivity extends AppCompatActivity implements RemoteAdapter.Act
 
     @Override
     public void onUpdateDefaultTime(int remoteId, long newTimeMillis) {
-        // Directly update the object in memory (Service holds the ref)
-        RemoteModel m = findRemoteById(remoteId);
-        if (m != null) {
-            m.setDefaultTimeMillis(newTimeMillis);
-            m.setRemainingTimeMillis(newTimeMillis); // Also reset current
-            adapter.notifyDataSetChanged();
+        // Goes through the service so the expiry alarm is re-armed for the new deadline
+        if (timerService != null) {
+            timerService.getCommandBus().setDefault(remoteId, newTimeMillis);
+            return;
         }
+        Intent intent = commandIntent(TimerService.CMD_SET_DEFAULT, remoteId);
+        intent.putExtra(TimerService.EXTRA_TIME_MILLIS, newTimeMillis);
+        startService(intent);
     }
-    
-    private RemoteModel findRemoteById(int id) {
-        // Quick lookup from service static list (Not clean architecture but functional for snippet)
-        for (RemoteModel m : TimerService.remotes) {
-            if (m.getId() == id) return m;
+
+    // Bound: straight onto the service's command bus. Otherwise (not bound yet) as an intent.
+    private void sendCommand(String cmd, int remoteId) {
+        if (timerService == null) {
+            startService(commandIntent(cmd, remoteId));
+            return;
+        }
+        CommandBus bus = timerService.getCommandBus();
+        switch (cmd) {
+            case TimerService.CMD_START: bus.start(remoteId); break;
+            case TimerService.CMD_PAUSE: bus.pause(remoteId); break;
+            case TimerService.CMD_RESET: bus.reset(remoteId); break;
+            case TimerService.CMD_STOP_ALARM: bus.stopAlarm(remoteId); break;
         }
-        return null;
     }
 
-    private void sendCommand(String cmd, int remoteId) {
+    private Intent commandIntent(String cmd, int remoteId) {
         Intent intent = new Intent(this, TimerService.class);
         intent.setAction(TimerService.ACTION_CMD);
         intent.putExtra("CMD", cmd);
         intent.putExtra(TimerService.EXTRA_REMOTE_ID, remoteId);
-        startService(intent);
-    }
-
-    // Broadcast Receiver
-    private class TimerReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (TimerService.ACTION_UPDATE_UI.equals(intent.getAction())) {
-                // Refresh Adapter
-                // Note: notifyDataSetChanged is heavy if called every second. 
-                // But efficient enough for 10 items.
-                updateVisibleList(); 
-            }
-        }
+        return intent;
     }
 }
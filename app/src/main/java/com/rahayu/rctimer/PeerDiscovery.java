@@ -0,0 +1,153 @@
+package com.rahayu.rctimer;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Finds the other phones on the same Wi-Fi through DNS-SD (NsdManager) and keeps
+// PeerSync connected to them. Every phone advertises "rctimer-<origin hex>"; of
+// each pair only the one with the smaller origin dials, so a pair shares one link.
+public class PeerDiscovery {
+    private static final String TAG = "PeerDiscovery";
+    public static final String SERVICE_TYPE = "_rctimer._tcp.";
+    private static final String NAME_PREFIX = "rctimer-";
+
+    private final NsdManager nsd;
+    private final PeerSync sync;
+    private final String name;
+    // NsdManager resolves one service at a time, the rest wait here
+    private final ArrayDeque<NsdServiceInfo> toResolve = new ArrayDeque<>();
+    private final Map<String, NsdServiceInfo> resolved = new HashMap<>();
+    private boolean resolving;
+
+    public PeerDiscovery(Context context, PeerSync sync) {
+        this.nsd = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+        this.sync = sync;
+        this.name = NAME_PREFIX + Long.toHexString(sync.getOrigin());
+    }
+
+    public void start(int port) {
+        NsdServiceInfo info = new NsdServiceInfo();
+        info.setServiceName(name);
+        info.setServiceType(SERVICE_TYPE);
+        info.setPort(port);
+        nsd.registerService(info, NsdManager.PROTOCOL_DNS_SD, registration);
+        nsd.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discovery);
+    }
+
+    public void stop() {
+        try {
+            nsd.unregisterService(registration);
+        } catch (IllegalArgumentException e) {
+            // Registration never went through
+        }
+        try {
+            nsd.stopServiceDiscovery(discovery);
+        } catch (IllegalArgumentException e) {
+            // Discovery never started
+        }
+        synchronized (this) {
+            toResolve.clear();
+            resolved.clear();
+        }
+    }
+
+    // Origin from "rctimer-<hex>", or -1 for services that are not ours
+    static long originOf(String serviceName) {
+        if (serviceName == null || !serviceName.startsWith(NAME_PREFIX)) return -1;
+        String hex = serviceName.substring(NAME_PREFIX.length()).split(" ")[0];
+        try {
+            return Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized void resolveNext() {
+        resolving = false;
+        NsdServiceInfo next = toResolve.poll();
+        if (next == null) return;
+        resolving = true;
+        nsd.resolveService(next, new NsdManager.ResolveListener() {
+            @Override
+            public void onServiceResolved(NsdServiceInfo info) {
+                String host = info.getHost().getHostAddress();
+                Log.d(TAG, "Peer " + info.getServiceName() + " at " + host + ":" + info.getPort());
+                synchronized (PeerDiscovery.this) {
+                    resolved.put(info.getServiceName(), info);
+                }
+                sync.connect(host, info.getPort());
+                resolveNext();
+            }
+
+            @Override
+            public void onResolveFailed(NsdServiceInfo info, int errorCode) {
+                Log.w(TAG, "Cannot resolve " + info.getServiceName() + " (" + errorCode + ")");
+                resolveNext();
+            }
+        });
+    }
+
+    private final NsdManager.RegistrationListener registration = new NsdManager.RegistrationListener() {
+        @Override
+        public void onServiceRegistered(NsdServiceInfo info) {
+            Log.d(TAG, "Advertised as " + info.getServiceName());
+        }
+
+        @Override
+        public void onRegistrationFailed(NsdServiceInfo info, int errorCode) {
+            Log.w(TAG, "Cannot advertise (" + errorCode + "), peers with a larger id will not find us");
+        }
+
+        @Override
+        public void onServiceUnregistered(NsdServiceInfo info) {
+        }
+
+        @Override
+        public void onUnregistrationFailed(NsdServiceInfo info, int errorCode) {
+        }
+    };
+
+    private final NsdManager.DiscoveryListener discovery = new NsdManager.DiscoveryListener() {
+        @Override
+        public void onServiceFound(NsdServiceInfo info) {
+            // Ourselves, someone else's service, or a peer that dials us
+            if (originOf(info.getServiceName()) <= sync.getOrigin()) return;
+            synchronized (PeerDiscovery.this) {
+                toResolve.add(info);
+                if (resolving) return;
+            }
+            resolveNext();
+        }
+
+        @Override
+        public void onServiceLost(NsdServiceInfo info) {
+            NsdServiceInfo peer;
+            synchronized (PeerDiscovery.this) {
+                peer = resolved.remove(info.getServiceName());
+            }
+            if (peer != null) sync.disconnect(peer.getHost().getHostAddress(), peer.getPort());
+        }
+
+        @Override
+        public void onDiscoveryStarted(String serviceType) {
+        }
+
+        @Override
+        public void onDiscoveryStopped(String serviceType) {
+        }
+
+        @Override
+        public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+            Log.w(TAG, "Discovery failed (" + errorCode + "), only peers that dial us will connect");
+        }
+
+        @Override
+        public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+        }
+    };
+}
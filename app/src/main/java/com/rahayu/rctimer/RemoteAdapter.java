@@ -15,17 +15,32 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
 public class RemoteAdapter extends RecyclerView.Adapter<RemoteAdapter.ViewHolder> {
 
-    private List<RemoteModel> remoteList;
+    // Partial bind payload: the remote's state moved, rebind its timer and controls only.
+    // The holder is rebound in place, no change animation and no second holder.
+    static final Object PAYLOAD_STATE = new Object();
+
+    private TimerSnapshot snapshot;
+    private int[] visibleIds = new int[0];
+    private int[] previousIds = new int[0]; // Second buffer, swapped with visibleIds on update
+    private int visibleCount;
+    private int[] positionById = new int[0]; // Remote id -> adapter position + 1 (0 = hidden)
     private Context context;
     private ActionListener actionListener;
 
+    // Bind accounting: full binds only when a tile shows a different remote,
+    // state binds on state changes, nothing while the clock runs
+    private long fullBinds;
+    private long stateBinds;
+
     public interface ActionListener {
         void onStartPause(int remoteId);
         void onReset(int remoteId);
@@ -33,43 +48,164 @@ public class RemoteAdapter extends RecyclerView.Adapter<RemoteAdapter.ViewHolder
         void onUpdateDefaultTime(int remoteId, long newTimeMillis);
     }
 
-    public RemoteAdapter(Context context, List<RemoteModel> remoteList, ActionListener listener) {
+    public RemoteAdapter(Context context, ActionListener listener) {
         this.context = context;
-        this.remoteList = remoteList;
         this.actionListener = listener;
+        setHasStableIds(true);
     }
     
-    // Method to update list smoothly
-    public void updateData(List<RemoteModel> newList) {
-        this.remoteList = newList;
-        notifyDataSetChanged(); // For 10 items, this is fine
+    // Replaces the visible set (ids[0..count)), diffing by remote id so only
+    // inserted, removed or changed tiles are touched.
+    public void updateData(TimerSnapshot newSnapshot, int[] ids, int count) {
+        final TimerSnapshot oldSnapshot = snapshot;
+        final int[] oldIds = visibleIds;
+        final int oldCount = visibleCount;
+
+        // Reuse the spare buffer instead of allocating a new list per update
+        int[] target = previousIds.length >= count ? previousIds : new int[count];
+        System.arraycopy(ids, 0, target, 0, count);
+        previousIds = oldIds;
+
+        snapshot = newSnapshot;
+        visibleIds = target;
+        visibleCount = count;
+        rebuildPositions();
+
+        if (oldSnapshot == null) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldCount;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return visibleCount;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                return oldIds[oldPos] == visibleIds[newPos];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                // Same snapshot version means nothing but the clock moved
+                if (oldSnapshot.version() == newSnapshot.version()) return true;
+                int id = visibleIds[newPos];
+                if (!oldSnapshot.contains(id)) return false;
+                byte state = newSnapshot.getState(id);
+                return oldSnapshot.getState(id) == state
+                        && (state == TimerStore.STATE_RUNNING
+                            ? oldSnapshot.getDeadline(id) == newSnapshot.getDeadline(id)
+                            : oldSnapshot.getRemaining(id, 0) == newSnapshot.getRemaining(id, 0));
+            }
+
+            @Override
+            public Object getChangePayload(int oldPos, int newPos) {
+                return PAYLOAD_STATE; // Same remote (areItemsTheSame), only its state differs
+            }
+        }, false).dispatchUpdatesTo(this);
+    }
+
+    // Applies coalesced service changes. These are state transitions only, the
+    // countdown digits tick on their own in CountdownTextView.
+    public void applyChanges(TimerSnapshot newSnapshot, ChangeSet changes) {
+        snapshot = newSnapshot;
+        for (int i = 0, n = changes.size(); i < n; i++) {
+            int position = positionOf(changes.idAt(i));
+            if (position >= 0) notifyItemChanged(position, PAYLOAD_STATE);
+        }
+    }
+
+    public int positionOf(int remoteId) {
+        return remoteId < positionById.length ? positionById[remoteId] - 1 : -1;
+    }
+
+    public long getFullBindCount() {
+        return fullBinds;
+    }
+
+    public long getStateBindCount() {
+        return stateBinds;
+    }
+
+    private void rebuildPositions() {
+        int maxId = snapshot != null ? snapshot.size() : 0;
+        if (positionById.length <= maxId) {
+            positionById = new int[maxId + 1];
+        } else {
+            Arrays.fill(positionById, 0);
+        }
+        for (int i = 0; i < visibleCount; i++) {
+            positionById[visibleIds[i]] = i + 1;
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return visibleIds[position];
     }
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_remote, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+
+        // Click Listeners (created once per holder, they read the id bound last)
+        holder.btnStart.setOnClickListener(v -> actionListener.onStartPause(holder.remoteId));
+        holder.btnReset.setOnClickListener(v -> actionListener.onReset(holder.remoteId));
+        holder.btnStopAlarm.setOnClickListener(v -> actionListener.onStopAlarm(holder.remoteId));
+
+        // Long click to edit default time for this specific unit (Advanced feature)
+        holder.itemView.setOnLongClickListener(v -> {
+            showEditTimeDialog(context, holder.remoteId, actionListener);
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        long startNanos = System.nanoTime();
+        if (!payloads.isEmpty() && holder.remoteId == visibleIds[position] && onlyState(payloads)) {
+            stateBinds++;
+            bindState(holder, holder.remoteId);
+        } else {
+            bind(holder, position);
+        }
+        TimerMetrics.get().getBind().record(System.nanoTime() - startNanos);
     }
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        RemoteModel model = remoteList.get(position);
+        onBindViewHolder(holder, position, Collections.emptyList());
+    }
 
-        holder.tvName.setText(model.getName());
+    private void bind(ViewHolder holder, int position) {
+        fullBinds++;
+        int remoteId = visibleIds[position];
+        holder.remoteId = remoteId;
+        holder.tvName.setText("REMOT " + remoteId);
+        bindState(holder, remoteId);
+    }
 
-        // Format Timer
-        long minutes = (model.getRemainingTimeMillis() / 1000) / 60;
-        long seconds = (model.getRemainingTimeMillis() / 1000) % 60;
-        String timeFormatted = String.format(Locale.getDefault(), "%02d:%02d", minutes, seconds);
-        holder.tvTimer.setText(timeFormatted);
+    private void bindState(ViewHolder holder, int remoteId) {
+        byte state = snapshot.getState(remoteId);
+        // Bound once with the deadline, the view counts down by itself from here
+        holder.tvTimer.bind(snapshot, remoteId);
 
         // Status Dot
-        if (model.isAlarming()) {
+        if (state == TimerStore.STATE_ALARMING) {
             holder.statusDot.setBackgroundResource(android.R.drawable.presence_busy); // Red-ish/Orange
             holder.btnStopAlarm.setVisibility(View.VISIBLE);
             holder.btnStart.setEnabled(false);
             holder.btnReset.setEnabled(false);
-        } else if (model.isRunning()) {
+        } else if (state == TimerStore.STATE_RUNNING) {
             holder.statusDot.setBackgroundResource(android.R.drawable.presence_online); // Green
             holder.btnStart.setText("PAUSE");
             holder.btnStart.setBackgroundTintList(android.content.res.ColorStateList.valueOf(0xFFFFA000)); // Orange
@@ -84,22 +220,19 @@ public class RemoteAdapter extends RecyclerView.Adapter<RemoteAdapter.ViewHolder
             holder.btnStart.setEnabled(true);
             holder.btnReset.setEnabled(true);
         }
+    }
 
-        // Click Listeners
-        holder.btnStart.setOnClickListener(v -> actionListener.onStartPause(model.getId()));
-        holder.btnReset.setOnClickListener(v -> actionListener.onReset(model.getId()));
-        holder.btnStopAlarm.setOnClickListener(v -> actionListener.onStopAlarm(model.getId()));
-        
-        // Long click to edit default time for this specific unit (Advanced feature)
-        holder.itemView.setOnLongClickListener(v -> {
-            showEditTimeDialog(model);
-            return true;
-        });
+    private static boolean onlyState(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_STATE) return false;
+        }
+        return true;
     }
 
-    private void showEditTimeDialog(RemoteModel model) {
+    // Shared with DashboardView's long press
+    static void showEditTimeDialog(Context context, int remoteId, ActionListener actionListener) {
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
-        builder.setTitle("Atur Waktu " + model.getName());
+        builder.setTitle("Atur Waktu REMOT " + remoteId);
         
         final EditText input = new EditText(context);
         input.setInputType(android.text.InputType.TYPE_CLASS_NUMBER);
@@ -110,7 +243,7 @@ public class RemoteAdapter extends RecyclerView.Adapter<RemoteAdapter.ViewHolder
             String txt = input.getText().toString();
             if(!txt.isEmpty()){
                 int min = Integer.parseInt(txt);
-                actionListener.onUpdateDefaultTime(model.getId(), min * 60 * 1000L);
+                actionListener.onUpdateDefaultTime(remoteId, min * 60 * 1000L);
             }
         });
         builder.setNegativeButton("Batal", (dialog, which) -> dialog.cancel());
@@ -119,13 +252,15 @@ public class RemoteAdapter extends RecyclerView.Adapter<RemoteAdapter.ViewHolder
 
     @Override
     public int getItemCount() {
-        return remoteList.size();
+        return visibleCount;
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
-        TextView tvName, tvTimer;
+        TextView tvName;
+        CountdownTextView tvTimer;
         View statusDot;
         Button btnStart, btnReset, btnStopAlarm;
+        int remoteId;
 
         public ViewHolder(View itemView) {
             super(itemView);
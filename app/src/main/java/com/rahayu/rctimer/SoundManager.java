@@ -2,20 +2,54 @@ package com.rahayu.rctimer;
 
 import android.content.Context;
 import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SoundManager {
+    private static final String TAG = "SoundManager";
+
+    // Bundled voice clips (IMA ADPCM, generated by the transcodeAudio build step), index 0 is REMOT 1.
+    // Resolved at compile time, no getIdentifier lookups.
+    private static final int[] CLIP_RES_IDS = {
+            R.raw.remot_1, R.raw.remot_2, R.raw.remot_3, R.raw.remot_4, R.raw.remot_5,
+            R.raw.remot_6, R.raw.remot_7, R.raw.remot_8, R.raw.remot_9, R.raw.remot_10
+    };
+
+    // Upper bound for decoded PCM kept in memory (a decoded clip is ~130-190 KB)
+    private static final long PCM_BUDGET_BYTES = 1024L * 1024;
+
+    public static final String PREF_ALARM_POLICY = "alarm_policy";
+
     private static SoundManager instance;
-    private MediaPlayer mediaPlayer;
-    private Queue<Integer> alarmQueue;
-    private boolean isPlaying = false;
+    private MediaPlayer mediaPlayer; // Only for remotes without a bundled clip (decode thread)
+    private final AlarmDispatcher dispatcher; // Every remote currently alarming
+    private int fallbackCount; // Audible remotes that use the system tone
+    private final Set<Integer> pendingClips = new HashSet<>(); // Audible, clip still decoding
     private Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable rotateRunnable = this::rotate;
+
+    private final PcmCache pcmCache = new PcmCache(PCM_BUDGET_BYTES, this::decodeClip);
+    // Clip decodes and the fallback MediaPlayer, so alarms never wait for I/O on the engine or UI thread
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    // Time from alarm trigger to the voice's first mixed block
+    private final LatencyStats alarmStartLatency = TimerMetrics.get().getAlarmStart();
+    private final AlarmAudioEngine audioEngine = new AlarmAudioEngine(alarmStartLatency);
 
     private SoundManager(Context context) {
         this.context = context;
-        this.alarmQueue = new LinkedList<>();
+        String policy = context.getSharedPreferences(TimerService.PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(PREF_ALARM_POLICY, AlarmDispatcher.Policy.MIX_ALL.name());
+        this.dispatcher = new AlarmDispatcher(parsePolicy(policy), AlarmDispatcher.DEFAULT_SLICE_MILLIS, this::onAudibleChanged);
     }
 
     public static synchronized SoundManager getInstance(Context context) {
@@ -25,84 +59,172 @@ public class SoundManager {
         return instance;
     }
 
-    // Trigger an alarm for a specific remote ID
+    // Service teardown: silences everything and ends the audio and decode threads.
+    // The next getInstance starts a fresh manager.
+    public static synchronized void release() {
+        if (instance == null) return;
+        instance.shutdown();
+        instance = null;
+    }
+
+    private synchronized void shutdown() {
+        handler.removeCallbacks(rotateRunnable);
+        pendingClips.clear();
+        fallbackCount = 0;
+        audioEngine.shutdown();
+        decodeExecutor.execute(this::releaseFallbackTone);
+        decodeExecutor.shutdown();
+    }
+
+    // Decodes the clip in the background if it is not cached yet, called for
+    // remotes whose deadline is close so their alarm starts from memory
+    public void prewarm(int remoteId) {
+        if (remoteId < 1 || remoteId > CLIP_RES_IDS.length || pcmCache.contains(remoteId)) return;
+        decodeExecutor.execute(() -> loadClip(remoteId));
+    }
+
+    private PcmClip loadClip(int remoteId) {
+        try {
+            return pcmCache.get(remoteId);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot decode clip for Remote " + remoteId, e);
+            return null;
+        }
+    }
+
+    private PcmClip decodeClip(int remoteId) throws Exception {
+        if (remoteId < 1 || remoteId > CLIP_RES_IDS.length) return null;
+        try (InputStream in = context.getResources().openRawResource(CLIP_RES_IDS[remoteId - 1])) {
+            return ImaAdpcm.decode(in);
+        }
+    }
+
+    // For the service metrics dump
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    public static AlarmDispatcher.Policy parsePolicy(String name) {
+        try {
+            return AlarmDispatcher.Policy.valueOf(name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return AlarmDispatcher.Policy.MIX_ALL;
+        }
+    }
+
+    public synchronized AlarmDispatcher.Policy getPolicy() {
+        return dispatcher.getPolicy();
+    }
+
+    public synchronized void setPolicy(AlarmDispatcher.Policy policy) {
+        dispatcher.setPolicy(policy, SystemClock.elapsedRealtime());
+        scheduleRotation();
+    }
+
+    // Remote whose voice is in front, or -1 when nothing is alarming
+    public synchronized int getActiveRemote() {
+        return dispatcher.getActiveOwner();
+    }
+
+    // Trigger an alarm for a specific remote ID; the dispatcher policy decides
+    // whether it plays now, alongside the others, or when its turn comes
     public void triggerAlarm(int remoteId) {
         synchronized (this) {
-            if (!alarmQueue.contains(remoteId)) {
-                alarmQueue.offer(remoteId);
-                Log.d("SoundManager", "Alarm queued for Remote " + remoteId);
+            if (dispatcher.add(remoteId, SystemClock.elapsedRealtime())) {
+                Log.d(TAG, "Alarm raised for Remote " + remoteId + " (" + dispatcher.size() + " alarming)");
+                scheduleRotation();
             }
-            processQueue();
         }
     }
 
-    // Stop alarm for a specific remote
+    // Stop alarm for a specific remote, only its own voice is touched
     public void stopAlarm(int remoteId) {
         synchronized (this) {
-            if (alarmQueue.contains(remoteId)) {
-                alarmQueue.remove(remoteId);
+            if (dispatcher.remove(remoteId, SystemClock.elapsedRealtime())) {
+                scheduleRotation();
             }
-            
-            // If the current playing sound belongs to this remote, stop it.
-            // Note: Since we are looping one sound at a time, simply stopping the player 
-            // and checking queue is sufficient logic for "Stop this alarm".
-            // However, to be precise, we rely on the user clicking "STOP" on the active alarm.
-            // If the current playing alarm is this one:
-            if (isPlaying) {
-                 // In a real complex app, we'd track WHICH remote is currently playing in a variable.
-                 // For now, we assume if STOP is clicked, we stop the current sound and play next.
-                 stopCurrentSound();
+        }
+    }
+
+    private synchronized void rotate() {
+        scheduleRotation();
+    }
+
+    private void scheduleRotation() {
+        handler.removeCallbacks(rotateRunnable);
+        long delay = dispatcher.tick(SystemClock.elapsedRealtime());
+        if (delay >= 0) {
+            handler.postDelayed(rotateRunnable, delay);
+        }
+    }
+
+    // Dispatcher output: (re)start or silence one remote's voice. Runs under the lock on the
+    // engine or main thread, so it only uses clips already in memory; anything slower goes
+    // to the decode thread and the voice starts when it is ready.
+    private void onAudibleChanged(int remoteId, boolean audible) {
+        if (audible) {
+            PcmClip clip = remoteId <= CLIP_RES_IDS.length ? pcmCache.getIfCached(remoteId) : null;
+            if (clip != null) {
+                audioEngine.startVoice(remoteId, clip);
+            } else if (remoteId <= CLIP_RES_IDS.length) {
+                if (pendingClips.add(remoteId)) {
+                    decodeExecutor.execute(() -> onClipLoaded(remoteId, loadClip(remoteId)));
+                }
+            } else {
+                startFallbackTone();
             }
+        } else if (pendingClips.remove(remoteId)) {
+            // Silenced before its clip was ready, the decode result only fills the cache
+        } else if (!audioEngine.stopVoice(remoteId) && fallbackCount > 0 && --fallbackCount == 0) {
+            decodeExecutor.execute(this::releaseFallbackTone);
         }
     }
 
-    private void processQueue() {
-        if (isPlaying || alarmQueue.isEmpty()) {
-            return;
+    // Decode thread
+    private void onClipLoaded(int remoteId, PcmClip clip) {
+        synchronized (this) {
+            if (!pendingClips.remove(remoteId)) return;
+            if (clip != null) {
+                audioEngine.startVoice(remoteId, clip);
+            } else {
+                startFallbackTone();
+            }
         }
+    }
 
-        int nextRemoteId = alarmQueue.peek(); // Don't remove yet, wait until processed or stopped? 
-        // Actually for looping alarm, we play UNTIL stopped.
-        // So we don't automatically proceed to next unless the user interacts or we mix sounds.
-        // But the requirement says "Queue or ensure clear".
-        // Strategy: Play the head of the queue. It loops. User must Dismiss it to play next.
-        
-        playRemoteSound(nextRemoteId);
+    // Fleets larger than the bundled clips share the looping system alarm tone
+    private void startFallbackTone() {
+        if (fallbackCount++ == 0) {
+            long requestedNanos = System.nanoTime();
+            decodeExecutor.execute(() -> playFallbackTone(requestedNanos));
+        }
     }
 
-    private void playRemoteSound(int remoteId) {
+    // Decode thread, MediaPlayer.create reads the tone from storage
+    private void playFallbackTone(long requestedNanos) {
+        synchronized (this) {
+            if (fallbackCount == 0) return; // Stopped again before it got here
+        }
+        if (mediaPlayer != null) return;
         try {
-            stopCurrentSound(); // Safety check
-
-            // Dynamic Resource Loading: R.raw.remot_x
-            String soundName = "remot_" + remoteId; 
-            int resId = context.getResources().getIdentifier(soundName, "raw", context.getPackageName());
-
-            if (resId != 0) {
-                mediaPlayer = MediaPlayer.create(context, resId);
-                if (mediaPlayer != null) {
-                    mediaPlayer.setLooping(true); // Requirement: SPAM/LOOPING
-                    mediaPlayer.setOnCompletionListener(mp -> {
-                        // For looping, this rarely triggers, but if it wasn't looping:
-                        // isPlaying = false; processQueue(); 
-                    });
-                    mediaPlayer.start();
-                    isPlaying = true;
-                    Log.d("SoundManager", "Playing sound for Remote " + remoteId);
-                }
+            mediaPlayer = MediaPlayer.create(context, RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM));
+            if (mediaPlayer != null) {
+                mediaPlayer.setLooping(true); // Requirement: SPAM/LOOPING
+                mediaPlayer.start();
+                alarmStartLatency.record(System.nanoTime() - requestedNanos);
             } else {
-                Log.e("SoundManager", "Sound file not found: " + soundName);
-                // If file missing, just remove from queue to avoid block
-                alarmQueue.poll();
-                processQueue();
+                Log.e(TAG, "No playable default alarm tone");
             }
         } catch (Exception e) {
-            Log.e("SoundManager", "Error playing sound", e);
-            isPlaying = false;
+            Log.e(TAG, "Error playing sound", e);
         }
     }
 
-    private void stopCurrentSound() {
+    // Decode thread
+    private void releaseFallbackTone() {
+        synchronized (this) {
+            if (fallbackCount > 0) return; // Raised again meanwhile, keep it looping
+        }
         if (mediaPlayer != null) {
             if (mediaPlayer.isPlaying()) {
                 mediaPlayer.stop();
@@ -110,18 +232,5 @@ public class SoundManager {
             mediaPlayer.release();
             mediaPlayer = null;
         }
-        isPlaying = false;
-        
-        // Remove the one that just finished/stopped from queue start
-        if (!alarmQueue.isEmpty()) {
-            alarmQueue.poll();
-        }
-        
-        // Immediately check if others are waiting
-        processQueue();
-    }
-    
-    public boolean isQueueEmpty() {
-        return alarmQueue.isEmpty();
     }
 }
@@ -0,0 +1,74 @@
+package com.rahayu.rctimer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Drives TimerService ticks only while something is running. Each wakeup lands
+// on the earliest deadline (displays tick themselves), and the scheduler parks
+// itself (no pending callbacks) once nothing is running.
+public class TickScheduler {
+    private static final String TAG = "TickScheduler";
+
+    private final Handler handler;
+    private final TimerEngine engine;
+    private final Runnable onTick;
+    private final Runnable tickRunnable = this::runTick;
+    private boolean parked = true;
+    private long dueNanos; // When the posted tick should run, on the elapsedRealtimeNanos clock
+
+    // Wakeup accounting for battery comparisons
+    private final long createdAt = SystemClock.elapsedRealtime();
+    private long wakeups;
+
+    public TickScheduler(Handler handler, TimerEngine engine, Runnable onTick) {
+        this.handler = handler;
+        this.engine = engine;
+        this.onTick = onTick;
+    }
+
+    // Called after every command, e.g. CMD_START resumes a parked scheduler
+    public void wake() {
+        handler.removeCallbacks(tickRunnable);
+        parked = false;
+        scheduleNext();
+    }
+
+    public void stop() {
+        handler.removeCallbacks(tickRunnable);
+        parked = true;
+    }
+
+    public boolean isParked() {
+        return parked;
+    }
+
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    public double getWakeupsPerHour() {
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - createdAt);
+        return wakeups * 3600000.0 / elapsed;
+    }
+
+    private void runTick() {
+        wakeups++;
+        TimerMetrics.get().onTick(SystemClock.elapsedRealtimeNanos() - dueNanos);
+        onTick.run();
+        scheduleNext();
+    }
+
+    private void scheduleNext() {
+        long delay = engine.nextTickDelay();
+        if (delay < 0) {
+            if (!parked) {
+                Log.d(TAG, "Idle, parking (" + wakeups + " wakeups so far)");
+            }
+            parked = true;
+            return;
+        }
+        dueNanos = SystemClock.elapsedRealtimeNanos() + delay * 1000000L;
+        handler.postDelayed(tickRunnable, delay);
+    }
+}
@@ -0,0 +1,280 @@
+package com.rahayu.rctimer;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import java.util.BitSet;
+
+// Lock screen view of the fleet. The foreground notification summarises what is
+// running and counts down to the earliest deadline with a system chronometer,
+// so the system renders the ticking and nothing is re-posted per second. Each
+// alarming remote gets its own notification with a STOP action, grouped under
+// one summary.
+//
+// Posting only happens on state changes (invalidate()), at most once per
+// channel interval, and is skipped when the visible content did not change.
+// Everything runs on the engine thread.
+public class TimerNotifier {
+    public static final int SUMMARY_ID = 1;
+    private static final int ALARM_SUMMARY_ID = 2;
+    private static final int ALARM_ID_BASE = 1000; // Alarm notification id = base + remote id
+
+    public static final String CHANNEL_ALARMS = "TimerAlarmChannel";
+    private static final String GROUP_ALARMS = "com.rahayu.rctimer.ALARMS";
+
+    // Minimum gap between posts per channel; the system drops bursts above a few per second anyway
+    private static final long TIMERS_MIN_INTERVAL_MS = 1000;
+    private static final long ALARMS_MIN_INTERVAL_MS = 250;
+
+    // Beyond this many, alarming remotes are only listed in the group summary
+    private static final int MAX_ALARM_NOTIFICATIONS = 20;
+
+    private final Context context;
+    private final NotificationManagerCompat manager;
+    private final Handler handler;
+    private final TimerStore store;
+    private final PendingIntent openApp;
+    private final PendingIntent resetExpired;
+
+    private final Runnable postTimers = this::postTimers;
+    private final Runnable postAlarms = this::postAlarms;
+    private boolean timersPending;
+    private boolean alarmsPending;
+    private long timersPostedAt = -TIMERS_MIN_INTERVAL_MS;
+    private long alarmsPostedAt = -ALARMS_MIN_INTERVAL_MS;
+
+    // What is currently on screen, to skip identical re-posts
+    private int shownRunning = -1;
+    private int shownAlarming = -1;
+    private int shownEarliestId = -1;
+    private long shownEarliestDeadline = -1;
+    private final BitSet seenAlarms = new BitSet();   // Alarming set at the last post
+    private final BitSet postedAlarms = new BitSet(); // Remotes with their own notification up
+    private final BitSet alarmsNow = new BitSet();
+    private long posts;
+    private long skipped;
+
+    public TimerNotifier(Context context, Handler handler, TimerStore store) {
+        this.context = context;
+        this.manager = NotificationManagerCompat.from(context);
+        this.handler = handler;
+        this.store = store;
+        this.openApp = PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class),
+                PendingIntent.FLAG_IMMUTABLE);
+        this.resetExpired = commandIntent(TimerService.CMD_RESET_EXPIRED, -1);
+        createChannels();
+    }
+
+    // Notification for startForeground(), before the first state is known
+    public Notification buildInitial() {
+        return summaryBuilder().setContentText("RAHAYU RC TIMER Ready").build();
+    }
+
+    // Something may have changed; re-post each channel once its interval allows
+    public void invalidate() {
+        long now = SystemClock.elapsedRealtime();
+        if (!timersPending) {
+            timersPending = true;
+            handler.postDelayed(postTimers, Math.max(0, timersPostedAt + TIMERS_MIN_INTERVAL_MS - now));
+        }
+        if (!alarmsPending) {
+            alarmsPending = true;
+            handler.postDelayed(postAlarms, Math.max(0, alarmsPostedAt + ALARMS_MIN_INTERVAL_MS - now));
+        }
+    }
+
+    public void cancelAlarms() {
+        handler.removeCallbacks(postAlarms);
+        for (int id = postedAlarms.nextSetBit(0); id >= 0; id = postedAlarms.nextSetBit(id + 1)) {
+            manager.cancel(ALARM_ID_BASE + id);
+        }
+        manager.cancel(ALARM_SUMMARY_ID);
+        postedAlarms.clear();
+        seenAlarms.clear();
+    }
+
+    public long getPostCount() {
+        return posts;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    private void postTimers() {
+        timersPending = false;
+        TimerSnapshot snapshot = store.snapshot();
+        int running = 0;
+        int alarming = snapshot.getAlarmingCount();
+        int earliestId = -1;
+        long earliest = Long.MAX_VALUE;
+        for (int id = 1; id <= snapshot.size(); id++) {
+            if (!snapshot.isRunning(id)) continue;
+            running++;
+            if (snapshot.getDeadline(id) < earliest) {
+                earliest = snapshot.getDeadline(id);
+                earliestId = id;
+            }
+        }
+        if (running == shownRunning && alarming == shownAlarming
+                && earliestId == shownEarliestId && (earliestId < 0 || earliest == shownEarliestDeadline)) {
+            skipped++;
+            return;
+        }
+        shownRunning = running;
+        shownAlarming = alarming;
+        shownEarliestId = earliestId;
+        shownEarliestDeadline = earliest;
+
+        NotificationCompat.Builder builder = summaryBuilder();
+        StringBuilder text = new StringBuilder();
+        text.append(running).append(" berjalan");
+        if (alarming > 0) text.append(", ").append(alarming).append(" habis");
+        if (earliestId > 0) {
+            // The system counts down to this wall clock time on its own
+            long when = System.currentTimeMillis() + (earliest - SystemClock.elapsedRealtime());
+            builder.setContentTitle("REMOT " + earliestId + " habis paling cepat")
+                    .setWhen(when)
+                    .setShowWhen(true)
+                    .setUsesChronometer(true)
+                    .setChronometerCountDown(true);
+        } else {
+            builder.setShowWhen(false);
+        }
+        builder.setContentText(text);
+        notify(SUMMARY_ID, builder.build());
+        timersPostedAt = SystemClock.elapsedRealtime();
+    }
+
+    private void postAlarms() {
+        alarmsPending = false;
+        TimerSnapshot snapshot = store.snapshot();
+        alarmsNow.clear();
+        int alarming = 0;
+        for (int id = 1; id <= snapshot.size(); id++) {
+            if (snapshot.isAlarming(id)) {
+                alarmsNow.set(id);
+                alarming++;
+            }
+        }
+        if (alarmsNow.equals(seenAlarms)) {
+            skipped++;
+            return;
+        }
+        seenAlarms.clear();
+        seenAlarms.or(alarmsNow);
+        alarmsPostedAt = SystemClock.elapsedRealtime();
+
+        // Cancel the ones that were acknowledged or reset
+        for (int id = postedAlarms.nextSetBit(0); id >= 0; id = postedAlarms.nextSetBit(id + 1)) {
+            if (!alarmsNow.get(id)) {
+                manager.cancel(ALARM_ID_BASE + id);
+                postedAlarms.clear(id);
+            }
+        }
+        if (alarming == 0) {
+            manager.cancel(ALARM_SUMMARY_ID);
+            return;
+        }
+
+        // Post the new ones, lowest ids first, until the cap is reached
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+        int listed = 0;
+        for (int id = alarmsNow.nextSetBit(0); id >= 0; id = alarmsNow.nextSetBit(id + 1)) {
+            if (listed++ < 5) inbox.addLine("REMOT " + id);
+            if (!postedAlarms.get(id) && postedAlarms.cardinality() < MAX_ALARM_NOTIFICATIONS) {
+                notify(ALARM_ID_BASE + id, alarmBuilder(id).build());
+                postedAlarms.set(id);
+            }
+        }
+        if (alarming > 5) inbox.addLine("+" + (alarming - 5) + " lainnya");
+
+        notify(ALARM_SUMMARY_ID, new NotificationCompat.Builder(context, CHANNEL_ALARMS)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle(alarming + " remot habis")
+                .setStyle(inbox.setSummaryText("Waktu habis"))
+                .setGroup(GROUP_ALARMS)
+                .setGroupSummary(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(openApp)
+                .addAction(0, "RESET SEMUA", resetExpired)
+                .build());
+    }
+
+    private NotificationCompat.Builder summaryBuilder() {
+        return new NotificationCompat.Builder(context, TimerService.CHANNEL_ID)
+                .setContentTitle("RAHAYU RC TIMER Main")
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentIntent(openApp)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+    }
+
+    private NotificationCompat.Builder alarmBuilder(int remoteId) {
+        return new NotificationCompat.Builder(context, CHANNEL_ALARMS)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle("REMOT " + remoteId + " HABIS")
+                .setContentText("Waktu sewa habis")
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setGroup(GROUP_ALARMS)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(openApp)
+                .addAction(0, "STOP", commandIntent(TimerService.CMD_STOP_ALARM, remoteId))
+                .addAction(0, "RESET", commandIntent(TimerService.CMD_RESET, remoteId));
+    }
+
+    private PendingIntent commandIntent(String cmd, int remoteId) {
+        Intent intent = new Intent(context, TimerService.class);
+        intent.setAction(TimerService.ACTION_CMD);
+        intent.putExtra("CMD", cmd);
+        intent.putExtra(TimerService.EXTRA_REMOTE_ID, remoteId);
+        // Distinct request codes keep one PendingIntent per remote and command
+        int requestCode = remoteId * 4 + (TimerService.CMD_STOP_ALARM.equals(cmd) ? 1
+                : TimerService.CMD_RESET.equals(cmd) ? 2 : 3);
+        return PendingIntent.getService(context, requestCode, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void notify(int id, Notification notification) {
+        try {
+            manager.notify(id, notification);
+            posts++;
+        } catch (SecurityException e) {
+            // POST_NOTIFICATIONS not granted (Android 13+), the timers keep working without it
+            skipped++;
+        }
+    }
+
+    private void createChannels() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager nm = context.getSystemService(NotificationManager.class);
+            NotificationChannel serviceChannel = new NotificationChannel(
+                    TimerService.CHANNEL_ID,
+                    "Rahayu Timer Service Channel",
+                    NotificationManager.IMPORTANCE_LOW
+            );
+            nm.createNotificationChannel(serviceChannel);
+
+            // Alarm sound comes from the app's own mixer, the channel only shows and vibrates
+            NotificationChannel alarmChannel = new NotificationChannel(
+                    CHANNEL_ALARMS,
+                    "Rahayu Timer Alarms",
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            alarmChannel.setSound(null, null);
+            alarmChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
+            nm.createNotificationChannel(alarmChannel);
+        }
+    }
+}
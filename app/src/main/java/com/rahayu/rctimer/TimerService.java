@@ -1,21 +1,31 @@
 package com.rahayu.rctimer;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.os.Build;
+import android.os.Binder;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
-import androidx.core.app.NotificationCompat;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class TimerService extends Service {
-    public static final String ACTION_UPDATE_UI = "com.rahayu.rctimer.UPDATE_UI";
     public static final String CHANNEL_ID = "TimerServiceChannel";
     
     // Commands
@@ -24,68 +34,222 @@ public class TimerService extends Service {
     public static final String CMD_PAUSE = "PAUSE";
     public static final String CMD_RESET = "RESET";
     public static final String CMD_STOP_ALARM = "STOP_ALARM";
+    public static final String CMD_SET_DEFAULT = "SET_DEFAULT";
+    public static final String CMD_SET_FLEET_SIZE = "SET_FLEET_SIZE";
+    public static final String CMD_EXTEND = "EXTEND";
+    public static final String CMD_RESET_EXPIRED = "RESET_EXPIRED";
     public static final String EXTRA_REMOTE_ID = "REMOTE_ID";
+    public static final String EXTRA_TIME_MILLIS = "TIME_MILLIS";
+    public static final String EXTRA_FLEET_SIZE = "FLEET_SIZE";
 
-    // State
-    public static List<RemoteModel> remotes = new ArrayList<>();
+    // Settings
+    public static final String PREFS_NAME = "RahayuPrefs";
+    public static final String PREF_FLEET_SIZE = "fleet_size";
+    public static final int DEFAULT_FLEET_SIZE = 10;
+    public static final long DEFAULT_TIME_MILLIS = 15 * 60 * 1000L;
+    public static final String PREF_LAN_SYNC = "lan_sync";
+    // Highest Lamport clock used for LAN sync, see PeerSync
+    private static final String PREF_SYNC_LAMPORT = "sync_lamport";
+    // Lamport clock is persisted at most this often while commands flow, and when sync stops.
+    // Losing the last few seconds in a crash is harmless: peers send theirs in HELLO.
+    private static final long LAMPORT_SAVE_DELAY_MS = 10 * 1000L;
+
+    // Timer state survives process death in this journal (see TimerJournal)
+    private static final String JOURNAL_FILE = "timers.journal";
+
+    // Alarm clips of remotes expiring within this window are decoded ahead of time
+    private static final long PREWARM_WINDOW_MS = 60 * 1000L;
+
+    // Changes arriving within one frame are delivered to listeners as a single callback
+    private static final long DISPATCH_DELAY_MS = 16;
+
+    // Bound clients (MainActivity) get coalesced change events on the main thread
+    public interface StateListener {
+        void onTimersChanged(TimerSnapshot snapshot, ChangeSet changes);
+    }
+
+    public class LocalBinder extends Binder {
+        public TimerService getService() {
+            return TimerService.this;
+        }
+    }
+
+    // State (writes go through the engine, other threads read published snapshots)
+    private TimerStore store;
+    // Engine, ticks, commands and alarm triggering all run on this thread, away from UI work
+    private HandlerThread engineThread;
     private Handler handler;
-    private Runnable runnable;
+    private Handler mainHandler;
+    private TickScheduler scheduler;
+    private ExpiryAlarm expiryAlarm;
     private SoundManager soundManager;
+    private TimerEngine engine;
+    private TimerNotifier notifier;
+    private TimerJournal journal;
+    private SessionRecorder sessions;
+    private SessionLog sessionLog;
+    // Session log appends and report queries run here, off the main thread
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    private final IBinder binder = new LocalBinder();
+    private final List<StateListener> listeners = new ArrayList<>(); // Main thread only
+    private final ChangeCoalescer pendingChanges = new ChangeCoalescer(); // Engine thread only
+    private final ChangeHandoff handoff = new ChangeHandoff();
+    private final Runnable deliverRunnable = this::deliverChanges;
+    private final Runnable fullRefresh = () -> {
+        pendingChanges.markFleetChanged();
+        scheduleDispatch();
+    };
+    // Commands from any thread are drained on the engine's handler, one batch per post
+    private final CommandBus commandBus = new CommandBus(r -> handler.post(r), this::drainCommands);
+    private final CommandBatch commandBatch = new CommandBatch();
+    private CommandApplier commandApplier;
+    private final Runnable dispatchRunnable = this::dispatchChanges;
+    private IntConsumer prewarmClip;
+    private boolean dispatchScheduled;
+    // Set by the teardown in onDestroy; nothing touches the journal or sessions after it (engine thread)
+    private boolean engineStopped;
+    private final TimerMetrics metrics = TimerMetrics.get();
+    // LAN sync with other phones, null while switched off (engine thread)
+    private volatile PeerSync peerSync;
+    private PeerDiscovery peerDiscovery;
+    private volatile int syncPeers;
+    private final Runnable saveLamportRunnable = this::saveLamport;
+    private boolean lamportSaveScheduled;
 
     @Override
     public void onCreate() {
         super.onCreate();
+        startEngineThread();
         soundManager = SoundManager.getInstance(this);
         initializeData();
-        createNotificationChannel();
-        startForeground(1, createNotification("RAHAYU RC TIMER Ready"));
+        engine = new TimerEngine(SystemClock::elapsedRealtime, store);
+        engine.setListener(id -> {
+            metrics.onExpired((engine.now() - store.getDeadline(id)) * 1000000L);
+            journal.record(id);
+            sessions.onExpired(id, store.getDeadline(id));
+            soundManager.triggerAlarm(id);
+            pendingChanges.mark(id, ChangeSet.CHANGE_ALARM | ChangeSet.CHANGE_STATE);
+            notifier.invalidate();
+        });
+        openSessionLog();
+        commandApplier = new CommandApplier(engine, sessions, new CommandApplier.Effects() {
+            @Override
+            public void onAlarmStopped(int remoteId) {
+                soundManager.stopAlarm(remoteId);
+            }
+
+            @Override
+            public void onRemoteChanged(int remoteId, int kind) {
+                journal.record(remoteId);
+                pendingChanges.mark(remoteId, kind);
+            }
+
+            @Override
+            public void onLocalChange(int remoteId, int ops) {
+                publishToPeers(remoteId, ops);
+            }
+
+            @Override
+            public void onFleetResized() {
+                journal.recordFleetSize();
+                pendingChanges.markFleetChanged();
+            }
+        });
+        // Remotes that were already ringing when the process died ring again
+        for (int id = 1; id <= store.size(); id++) {
+            if (store.isAlarming(id)) soundManager.triggerAlarm(id);
+        }
+        expiryAlarm = new ExpiryAlarm(this);
+        prewarmClip = soundManager::prewarm;
+        notifier = new TimerNotifier(this, handler, store);
+        startForeground(TimerNotifier.SUMMARY_ID, notifier.buildInitial());
         startTimerLoop();
+        if (getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getBoolean(PREF_LAN_SYNC, false)) {
+            handler.post(this::startSync);
+        }
+    }
+
+    // Latest published fleet state, read lock-free by bound clients
+    public TimerSnapshot getSnapshot() {
+        return store.snapshot();
     }
 
     private void initializeData() {
-        if (remotes.isEmpty()) {
-            // Default init 10 remotes
-            for (int i = 1; i <= 10; i++) {
-                remotes.add(new RemoteModel(i, "REMOT " + i, 15 * 60 * 1000L));
-            }
+        // Fleet size is configurable from the sidebar (default 10 remotes)
+        int size = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getInt(PREF_FLEET_SIZE, DEFAULT_FLEET_SIZE);
+        store = new TimerStore(size, DEFAULT_TIME_MILLIS);
+
+        // Rebuild running deadlines, banked time and default times from the journal.
+        // Remotes whose deadline passed while we were dead expire on the first tick.
+        journal = new TimerJournal(new File(getFilesDir(), JOURNAL_FILE), store,
+                SystemClock::elapsedRealtime, System::currentTimeMillis);
+        try {
+            int records = journal.recover();
+            Log.d("TimerService", "Journal recovered " + records + " records: " + journal);
+        } catch (IOException e) {
+            Log.w("TimerService", "Journal recovery failed, starting fresh", e);
         }
     }
 
-    private void startTimerLoop() {
-        handler = new Handler();
-        runnable = new Runnable() {
-            @Override
-            public void run() {
-                boolean anyRunning = false;
-                long now = System.currentTimeMillis();
-
-                for (RemoteModel r : remotes) {
-                    if (r.isRunning()) {
-                        anyRunning = true;
-                        long left = r.getRemainingTimeMillis() - 1000;
-                        if (left <= 0) {
-                            left = 0;
-                            r.setRunning(false);
-                            r.setAlarming(true);
-                            soundManager.triggerAlarm(r.getId());
-                        }
-                        r.setRemainingTimeMillis(left);
+    private void openSessionLog() {
+        sessionLog = new SessionLog(getFilesDir(), TimeZone.getDefault());
+        ioExecutor.execute(() -> {
+            try {
+                int scanned = sessionLog.open();
+                Log.d("TimerService", "Session log: " + sessionLog.size() + " sessions, scanned " + scanned);
+            } catch (IOException e) {
+                Log.w("TimerService", "Session log unavailable", e);
+            }
+        });
+        sessions = new SessionRecorder(SystemClock::elapsedRealtime, System::currentTimeMillis,
+                (id, startWall, endWall, billed, ackDelay, pauses, reason) -> ioExecutor.execute(() -> {
+                    try {
+                        sessionLog.append(id, startWall, endWall, billed, ackDelay, pauses, reason);
+                    } catch (IOException e) {
+                        Log.w("TimerService", "Session " + id + " not logged", e);
                     }
-                }
+                }), store.size());
+        sessions.resume(store.snapshot());
+    }
 
-                // Broadcast Update
-                Intent intent = new Intent(ACTION_UPDATE_UI);
-                sendBroadcast(intent);
+    // Today's totals for the whole fleet, computed from the session rollups and delivered on the main thread
+    public void requestDailyReport(Consumer<SessionLog.Summary> callback) {
+        ioExecutor.execute(() -> {
+            int today = sessionLog.dayOf(System.currentTimeMillis());
+            SessionLog.Summary summary = sessionLog.summarize(today, today, 0);
+            mainHandler.post(() -> callback.accept(summary));
+        });
+    }
 
-                // Update Notification if needed (simplified)
-                if (anyRunning) {
-                   // updateNotification("Timer running...");
-                }
+    private void startEngineThread() {
+        engineThread = new HandlerThread("TimerEngine", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        engineThread.start();
+        handler = new Handler(engineThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
 
-                handler.postDelayed(this, 1000);
-            }
-        };
-        handler.post(runnable);
+    // Tests idle this looper to wait for queued commands
+    Looper getEngineLooper() {
+        return engineThread.getLooper();
+    }
+
+    private void startTimerLoop() {
+        scheduler = new TickScheduler(handler, engine, this::onTick);
+        handler.post(() -> {
+            scheduler.wake();
+            notifier.invalidate(); // Recovered timers show up right away
+        });
+    }
+
+    private void onTick() {
+        if (engineStopped) return;
+        // Ticks only drive expiry checks; displays count down from the deadlines on
+        // their own, so only the expirations (marked by the engine listener) go out
+        engine.tick();
+        expiryAlarm.rearm(engine.nextDeadline());
+        engine.forEachDeadlineUntil(engine.now() + PREWARM_WINDOW_MS, prewarmClip);
+        scheduleDispatch();
     }
 
     @Override
@@ -94,78 +258,301 @@ public class TimerService extends Service {
             if (intent.getAction().equals(ACTION_CMD)) {
                 String cmd = intent.getStringExtra("CMD");
                 int id = intent.getIntExtra(EXTRA_REMOTE_ID, -1);
-                handleCommand(cmd, id);
+                if (CMD_SET_FLEET_SIZE.equals(cmd)) {
+                    commandBus.setFleetSize(intent.getIntExtra(EXTRA_FLEET_SIZE, DEFAULT_FLEET_SIZE));
+                } else {
+                    long timeMillis = intent.getLongExtra(EXTRA_TIME_MILLIS, 0);
+                    handleCommand(cmd, id, timeMillis);
+                }
+            } else if (intent.getAction().equals(ExpiryAlarm.ACTION_EXPIRE)) {
+                // Exact alarm woke us for the earliest deadline
+                handler.post(() -> {
+                    if (engineStopped) return;
+                    onTick();
+                    scheduler.wake();
+                });
             }
         }
         return START_STICKY; 
     }
 
-    private void handleCommand(String cmd, int id) {
-        RemoteModel target = null;
-        for (RemoteModel r : remotes) {
-            if (r.getId() == id) {
-                target = r;
+    // Intent commands (notifications, other components) join the same bus as bound clients
+    private void handleCommand(String cmd, int id, long timeMillis) {
+        if (cmd == null) return;
+        switch (cmd) {
+            case CMD_START:
+                commandBus.start(id);
+                break;
+            case CMD_PAUSE:
+                commandBus.pause(id);
+                break;
+            case CMD_RESET:
+                commandBus.reset(id);
+                break;
+            case CMD_STOP_ALARM:
+                commandBus.stopAlarm(id);
+                break;
+            case CMD_SET_DEFAULT:
+                commandBus.setDefault(id, timeMillis);
+                break;
+            case CMD_EXTEND:
+                commandBus.extend(id, timeMillis);
+                break;
+            case CMD_RESET_EXPIRED:
+                commandBus.resetAllExpired();
                 break;
-            }
         }
+    }
+
+    public CommandBus getCommandBus() {
+        return commandBus;
+    }
 
-        if (target != null) {
-            switch (cmd) {
-                case CMD_START:
-                    target.setRunning(true);
-                    target.setAlarming(false);
-                    break;
-                case CMD_PAUSE:
-                    target.setRunning(false);
-                    break;
-                case CMD_RESET:
-                    target.setRunning(false);
-                    target.setAlarming(false);
-                    target.setRemainingTimeMillis(target.getDefaultTimeMillis());
-                    soundManager.stopAlarm(id);
-                    break;
-                case CMD_STOP_ALARM:
-                    target.setAlarming(false);
-                    soundManager.stopAlarm(id);
-                    break;
+    // Applies everything queued since the last drain as one engine batch and one state change
+    private void drainCommands() {
+        commandBus.drainTo(commandBatch);
+        if (commandBatch.isEmpty() || engineStopped) return;
+        int oldSize = store.size();
+        commandApplier.apply(commandBatch);
+        // Remotes added to the fleet take over what the peers already agreed on
+        if (peerSync != null) {
+            for (int id = oldSize + 1; id <= store.size(); id++) {
+                SyncDelta delta = peerSync.getRegister(id);
+                if (delta != null) applyPeerDelta(delta);
             }
-            // Trigger immediate UI update
-            sendBroadcast(new Intent(ACTION_UPDATE_UI));
+        }
+        metrics.onCommandsApplied(commandBatch.getSubmittedNanos());
+        onStateChanged();
+    }
+
+    // Switches LAN sync with other phones on or off (remembered across restarts)
+    public void setLanSyncEnabled(boolean enabled) {
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putBoolean(PREF_LAN_SYNC, enabled).apply();
+        handler.post(enabled ? this::startSync : this::stopSync);
+    }
+
+    // Connected phones, 0 while LAN sync is off
+    public int getSyncPeerCount() {
+        return syncPeers;
+    }
+
+    // Engine thread
+    private void startSync() {
+        if (peerSync != null) return;
+        long lamport = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getLong(PREF_SYNC_LAMPORT, 0);
+        // A fresh origin every run, so sequence numbers never have to survive a restart
+        long origin = new SecureRandom().nextLong() & Long.MAX_VALUE;
+        PeerSync sync = new PeerSync(SystemClock::elapsedRealtime, System::currentTimeMillis, origin, lamport,
+                new PeerSync.Host() {
+                    @Override
+                    public void onDelta(SyncDelta delta) {
+                        handler.post(() -> applyPeerDelta(delta));
+                    }
+
+                    @Override
+                    public void onPeersChanged(int peers) {
+                        syncPeers = peers;
+                        Log.d("TimerService", "LAN sync: " + peers + " peer(s)");
+                    }
+                });
+        try {
+            int port = sync.listen(0);
+            peerSync = sync;
+            peerDiscovery = new PeerDiscovery(this, sync);
+            peerDiscovery.start(port);
+            Log.d("TimerService", "LAN sync on port " + port + ": " + sync);
+        } catch (IOException e) {
+            Log.w("TimerService", "LAN sync unavailable", e);
+            sync.close();
+        }
+    }
+
+    // Engine thread
+    private void stopSync() {
+        if (peerSync == null) return;
+        peerDiscovery.stop();
+        peerSync.close();
+        handler.removeCallbacks(saveLamportRunnable);
+        saveLamport();
+        peerSync = null;
+        peerDiscovery = null;
+        syncPeers = 0;
+    }
+
+    // Engine thread
+    private void saveLamport() {
+        lamportSaveScheduled = false;
+        if (peerSync == null) return;
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putLong(PREF_SYNC_LAMPORT, peerSync.getLamport()).apply();
+    }
+
+    // Engine thread: a command given here goes out to the other phones (ticks never do)
+    private void publishToPeers(int id, int ops) {
+        if (peerSync == null) return;
+        peerSync.publishLocal(id, ops, store.getState(id), store.getDeadline(id),
+                store.getRemaining(id, engine.now()), store.getDefaultDuration(id));
+        if (!lamportSaveScheduled) {
+            lamportSaveScheduled = true;
+            handler.postDelayed(saveLamportRunnable, LAMPORT_SAVE_DELAY_MS);
         }
     }
 
-    private Notification createNotification(String content) {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+    // Engine thread: another phone's change, unless something newer won since it was queued
+    private void applyPeerDelta(SyncDelta delta) {
+        if (peerSync == null || !peerSync.isCurrent(delta)) return;
+        long deadline = delta.state == TimerStore.STATE_RUNNING ? peerSync.toLocalDeadline(delta) : 0;
+        commandApplier.applyRemote(delta.remoteId, delta.ops, delta.state, deadline, delta.value, delta.defaultMillis);
+        onStateChanged();
+    }
+
+    private void onStateChanged() {
+        // Every state change can move the earliest deadline
+        expiryAlarm.rearm(engine.nextDeadline());
+
+        // Notify listeners and re-align (or resume) the tick loop
+        notifier.invalidate();
+        scheduleDispatch();
+        scheduler.wake();
+    }
+
+    // Listeners are registered and called on the main thread
+    public void registerListener(StateListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        // New listeners start with a full refresh
+        handler.post(fullRefresh);
+    }
+
+    public void unregisterListener(StateListener listener) {
+        listeners.remove(listener);
+    }
 
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("RAHAYU RC TIMER Main")
-                .setContentText(content)
-                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
-                .setContentIntent(pendingIntent)
-                .build();
+    // Engine thread
+    private void scheduleDispatch() {
+        if (dispatchScheduled || !pendingChanges.hasPending()) return;
+        dispatchScheduled = true;
+        handler.postDelayed(dispatchRunnable, DISPATCH_DELAY_MS);
     }
 
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel serviceChannel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "Rahayu Timer Service Channel",
-                    NotificationManager.IMPORTANCE_LOW
-            );
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(serviceChannel);
+    // Engine thread: hand the frame's changes to the UI, or keep coalescing if it is still busy
+    private void dispatchChanges() {
+        if (!handoff.offer(pendingChanges)) {
+            handler.postDelayed(dispatchRunnable, DISPATCH_DELAY_MS);
+            return;
         }
+        dispatchScheduled = false;
+        mainHandler.post(deliverRunnable);
+    }
+
+    // Main thread
+    private void deliverChanges() {
+        ChangeSet changes = handoff.take();
+        if (changes == null) return;
+        if (!listeners.isEmpty() && !changes.isEmpty()) {
+            TimerSnapshot snapshot = store.snapshot();
+            for (int i = listeners.size() - 1; i >= 0; i--) {
+                listeners.get(i).onTimersChanged(snapshot, changes);
+            }
+            metrics.onDelivered();
+        }
+        handoff.release(changes);
+    }
+
+    // Metrics and counters as text, or as one JSON object for tooling
+    public String exportMetrics(boolean json) {
+        StringBuilder out = new StringBuilder(2048);
+        TimerSnapshot snapshot = store.snapshot();
+        PcmCache pcmCache = soundManager.getPcmCache();
+        int frontRemote = soundManager.getActiveRemote();
+        if (json) {
+            out.append('{');
+            metrics.appendJsonFields(out);
+            out.append(",\"fleet\":").append(snapshot.size())
+                    .append(",\"alarming\":").append(snapshot.getAlarmingCount())
+                    .append(",\"tick_wakeups\":").append(scheduler.getWakeups())
+                    .append(",\"commands\":").append(commandBus.getSubmittedCount())
+                    .append(",\"command_batches\":").append(commandBus.getBatchCount())
+                    .append(",\"notifications_posted\":").append(notifier.getPostCount())
+                    .append(",\"notifications_skipped\":").append(notifier.getSkippedCount())
+                    .append(",\"journal_syncs\":").append(journal.getSyncCount())
+                    .append(",\"journal_compactions\":").append(journal.getCompactionCount())
+                    .append(",\"sync_peers\":").append(syncPeers)
+                    .append(",\"audio_front_remote\":").append(frontRemote)
+                    .append(",\"pcm_cache_bytes\":").append(pcmCache.getUsedBytes())
+                    .append(",\"pcm_cache_peak_bytes\":").append(pcmCache.getPeakBytes())
+                    .append(",\"pcm_cache_hit_rate\":").append(String.format(Locale.US, "%.3f", pcmCache.getHitRate()))
+                    .append('}');
+        } else {
+            out.append("fleet=").append(snapshot.size())
+                    .append(" alarming=").append(snapshot.getAlarmingCount())
+                    .append(" wakeups=").append(scheduler.getWakeups())
+                    .append(String.format(Locale.US, " (%.1f/h)", scheduler.getWakeupsPerHour())).append('\n');
+            metrics.appendText(out);
+            out.append("commands: ").append(commandBus.getSubmittedCount())
+                    .append(" in ").append(commandBus.getBatchCount()).append(" batches\n");
+            out.append("notifications: ").append(notifier.getPostCount()).append(" posted, ")
+                    .append(notifier.getSkippedCount()).append(" skipped\n");
+            out.append("journal: ").append(journal).append('\n');
+            PeerSync sync = peerSync;
+            out.append("sync: ").append(sync != null ? sync.toString() : "off").append('\n');
+            out.append("audio: front=").append(frontRemote >= 0 ? "Remote " + frontRemote : "none")
+                    .append(", pcm cache ").append(pcmCache).append('\n');
+        }
+        return out.toString();
+    }
+
+    // adb shell dumpsys activity service com.rahayu.rctimer/.TimerService [--json] [--reset]
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        List<String> options = args != null ? Arrays.asList(args) : new ArrayList<>();
+        if (scheduler == null) {
+            writer.println("not started");
+            return;
+        }
+        writer.println(exportMetrics(options.contains("--json")));
+        if (options.contains("--reset")) {
+            metrics.reset();
+            writer.println("metrics reset");
+        }
+        writer.flush();
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null; // Using intent commands for simplicity
+        return binder;
     }
     
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if(handler != null && runnable != null) handler.removeCallbacks(runnable);
+        if (mainHandler != null) mainHandler.removeCallbacks(deliverRunnable);
+        listeners.clear();
+        if (expiryAlarm != null) expiryAlarm.cancel();
+        if (engineThread != null) {
+            handler.post(() -> {
+                handler.removeCallbacks(dispatchRunnable);
+                scheduler.stop();
+                engineStopped = true;
+                notifier.cancelAlarms();
+                // No tick can raise an alarm any more
+                SoundManager.release();
+                stopSync();
+                // Ticks and commands no longer reach the journal, so it can flush and close
+                journal.close();
+                Log.d("TimerService", "Journal: " + journal);
+                // Same for session records: the last ones are queued, close behind them
+                ioExecutor.execute(() -> {
+                    try {
+                        sessionLog.close();
+                    } catch (IOException e) {
+                        Log.w("TimerService", "Session log close failed", e);
+                    }
+                });
+                ioExecutor.shutdown();
+                Log.d("TimerService", "Metrics:\n" + exportMetrics(false));
+            });
+            engineThread.quitSafely();
+        }
     }
 }
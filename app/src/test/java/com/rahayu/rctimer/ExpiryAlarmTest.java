@@ -0,0 +1,134 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import java.util.Random;
+import androidx.test.core.app.ApplicationProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+// Every command that moves the earliest deadline leaves exactly one exact alarm
+// armed for it, and none once nothing is running.
+@RunWith(RobolectricTestRunner.class)
+public class ExpiryAlarmTest {
+    private ServiceController<TimerService> controller;
+    private TimerService service;
+    private ShadowAlarmManager alarms;
+
+    @Before
+    public void setUp() {
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+        Context context = ApplicationProvider.getApplicationContext();
+        alarms = shadowOf((AlarmManager) context.getSystemService(Context.ALARM_SERVICE));
+        controller = Robolectric.buildService(TimerService.class).create();
+        service = controller.get();
+        idleEngine();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void alarmFollowsTheEarliestDeadline() {
+        assertNull(alarms.peekNextScheduledAlarm());
+
+        command(TimerService.CMD_START, 1, 0);
+        assertArmedFor(1);
+
+        // A shorter rental takes over the alarm
+        command(TimerService.CMD_SET_DEFAULT, 2, 5 * 60 * 1000L);
+        command(TimerService.CMD_START, 2, 0);
+        assertArmedFor(2);
+
+        // Pausing it hands the alarm back to remote 1
+        command(TimerService.CMD_PAUSE, 2, 0);
+        assertArmedFor(1);
+
+        // Nothing running: no alarm left behind
+        command(TimerService.CMD_RESET, 1, 0);
+        assertNull(alarms.peekNextScheduledAlarm());
+
+        // Resuming arms it for the banked remaining time
+        command(TimerService.CMD_START, 2, 0);
+        assertArmedFor(2);
+    }
+
+    @Test
+    public void extendMovesTheAlarm() {
+        command(TimerService.CMD_START, 1, 0);
+        long before = service.getSnapshot().getDeadline(1);
+        command(TimerService.CMD_EXTEND, 1, 60 * 1000L);
+        assertEquals(before + 60 * 1000L, service.getSnapshot().getDeadline(1));
+        assertArmedFor(1);
+    }
+
+    // Hundreds of interleaved commands across the fleet: after each one the alarm
+    // sits on the earliest running deadline, or nothing is armed at all
+    @Test
+    public void randomInterleavingKeepsTheAlarmOnTheEarliestDeadline() {
+        Random random = new Random(7);
+        String[] cmds = {TimerService.CMD_START, TimerService.CMD_START, TimerService.CMD_PAUSE,
+                TimerService.CMD_RESET, TimerService.CMD_SET_DEFAULT};
+        int remotes = TimerService.DEFAULT_FLEET_SIZE;
+        for (int step = 0; step < 400; step++) {
+            String cmd = cmds[random.nextInt(cmds.length)];
+            int id = 1 + random.nextInt(remotes);
+            // 1-30 minutes, far longer than the whole run so nothing expires meanwhile
+            long millis = cmd.equals(TimerService.CMD_SET_DEFAULT) ? (1 + random.nextInt(30)) * 60 * 1000L : 0;
+            command(cmd, id, millis);
+
+            TimerSnapshot snapshot = service.getSnapshot();
+            long earliest = Long.MAX_VALUE;
+            for (int r = 1; r <= remotes; r++) {
+                if (snapshot.isRunning(r)) earliest = Math.min(earliest, snapshot.getDeadline(r));
+            }
+            String context = "step " + step + ": " + cmd + " " + id;
+            if (earliest == Long.MAX_VALUE) {
+                assertNull(context, alarms.peekNextScheduledAlarm());
+            } else {
+                ShadowAlarmManager.ScheduledAlarm alarm = alarms.peekNextScheduledAlarm();
+                assertNotNull(context + ": no alarm armed", alarm);
+                assertEquals(context, 1, alarms.getScheduledAlarms().size());
+                assertEquals(context, earliest, alarm.getTriggerAtMs());
+            }
+            SystemClock.sleep(random.nextInt(50)); // Spread the deadlines apart
+        }
+    }
+
+    private void command(String cmd, int id, long millis) {
+        Intent intent = new Intent(service, TimerService.class)
+                .setAction(TimerService.ACTION_CMD)
+                .putExtra("CMD", cmd)
+                .putExtra(TimerService.EXTRA_REMOTE_ID, id)
+                .putExtra(TimerService.EXTRA_TIME_MILLIS, millis);
+        service.onStartCommand(intent, 0, 1);
+        idleEngine();
+    }
+
+    private void idleEngine() {
+        shadowOf(service.getEngineLooper()).idle();
+    }
+
+    private void assertArmedFor(int id) {
+        ShadowAlarmManager.ScheduledAlarm alarm = alarms.peekNextScheduledAlarm();
+        assertNotNull("no alarm armed", alarm);
+        assertEquals(1, alarms.getScheduledAlarms().size());
+        assertEquals(AlarmManager.ELAPSED_REALTIME_WAKEUP, alarm.getType());
+        assertEquals(service.getSnapshot().getDeadline(id), alarm.getTriggerAtMs());
+    }
+}
@@ -0,0 +1,135 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+// State changes rebind a tile in place through the payload path; only a tile
+// that starts showing another remote gets a full bind.
+@RunWith(RobolectricTestRunner.class)
+public class RemoteAdapterTest {
+    private static final int[] IDS = {1, 2, 3};
+
+    private TimerEngine engine;
+    private RemoteAdapter adapter;
+    private RecyclerView recycler;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        ContextThemeWrapper themed = new ContextThemeWrapper(activity, R.style.Theme_RahayuRCTimer);
+        engine = new TimerEngine(SystemClock::elapsedRealtime, new TimerStore(10, 60000));
+        adapter = new RemoteAdapter(themed, new RemoteAdapter.ActionListener() {
+            @Override
+            public void onStartPause(int remoteId) {
+            }
+
+            @Override
+            public void onReset(int remoteId) {
+            }
+
+            @Override
+            public void onStopAlarm(int remoteId) {
+            }
+
+            @Override
+            public void onUpdateDefaultTime(int remoteId, long newTimeMillis) {
+            }
+        });
+        recycler = new RecyclerView(themed);
+        recycler.setLayoutManager(new LinearLayoutManager(themed));
+        recycler.setAdapter(adapter);
+        activity.setContentView(recycler);
+
+        adapter.updateData(engine.snapshot(), IDS, IDS.length);
+        layout();
+    }
+
+    @Test
+    public void serviceChangesBindStateOnly() {
+        long full = adapter.getFullBindCount();
+        assertTrue(full > 0);
+        RemoteAdapter.ViewHolder holder = holderAt(0);
+
+        engine.start(1);
+        adapter.applyChanges(engine.snapshot(), changed(1));
+        layout();
+        assertEquals(full, adapter.getFullBindCount());
+        assertEquals(1, adapter.getStateBindCount());
+        assertSame(holder, holderAt(0));
+        assertEquals("PAUSE", holder.btnStart.getText().toString());
+
+        engine.pause(1);
+        engine.start(2);
+        adapter.applyChanges(engine.snapshot(), changed(1, 2));
+        layout();
+        assertEquals(full, adapter.getFullBindCount());
+        assertEquals(3, adapter.getStateBindCount());
+        assertEquals("START", holder.btnStart.getText().toString());
+    }
+
+    @Test
+    public void diffedUpdatesBindStateOnly() {
+        long full = adapter.getFullBindCount();
+
+        // Same ids, one remote changed state: a payload update for that tile only
+        engine.start(3);
+        adapter.updateData(engine.snapshot(), IDS, IDS.length);
+        layout();
+        assertEquals(full, adapter.getFullBindCount());
+        assertEquals(1, adapter.getStateBindCount());
+
+        // Nothing changed: no binds at all
+        adapter.updateData(engine.snapshot(), IDS, IDS.length);
+        layout();
+        assertEquals(full, adapter.getFullBindCount());
+        assertEquals(1, adapter.getStateBindCount());
+    }
+
+    @Test
+    public void alarmRebindsInPlace() {
+        long full = adapter.getFullBindCount();
+        engine.setDefaultTime(2, 1);
+        engine.start(2);
+        SystemClock.sleep(5);
+        engine.tick();
+        adapter.applyChanges(engine.snapshot(), changed(2));
+        layout();
+        assertEquals(full, adapter.getFullBindCount());
+        assertEquals(View.VISIBLE, holderAt(1).btnStopAlarm.getVisibility());
+    }
+
+    private RemoteAdapter.ViewHolder holderAt(int position) {
+        RemoteAdapter.ViewHolder holder = (RemoteAdapter.ViewHolder) recycler.findViewHolderForAdapterPosition(position);
+        assertNotNull("no holder at " + position, holder);
+        return holder;
+    }
+
+    private static ChangeSet changed(int... ids) {
+        ChangeCoalescer pending = new ChangeCoalescer();
+        for (int id : ids) pending.mark(id, ChangeSet.CHANGE_STATE | ChangeSet.CHANGE_ALARM);
+        ChangeSet set = new ChangeSet();
+        pending.drainTo(set);
+        return set;
+    }
+
+    // Runs the layout pass that applies pending adapter updates (and binds)
+    private void layout() {
+        recycler.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(4000, View.MeasureSpec.EXACTLY));
+        recycler.layout(0, 0, 1080, 4000);
+    }
+}
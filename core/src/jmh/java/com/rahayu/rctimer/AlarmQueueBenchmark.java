@@ -0,0 +1,53 @@
+package com.rahayu.rctimer;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The AlarmDispatcher's alarming set under each policy
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class AlarmQueueBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int timers;
+
+    @Param({"MIX_ALL", "ROUND_ROBIN", "FIFO"})
+    public AlarmDispatcher.Policy policy;
+
+    private long now;
+    private long audibleChanges;
+    private AlarmDispatcher dispatcher;
+    private AlarmDispatcher ringing;   // Whole fleet alarming, for rotation
+
+    @Setup
+    public void setUp() {
+        AlarmDispatcher.Output output = (id, audible) -> audibleChanges++;
+        dispatcher = new AlarmDispatcher(policy, AlarmDispatcher.DEFAULT_SLICE_MILLIS, output);
+        ringing = new AlarmDispatcher(policy, AlarmDispatcher.DEFAULT_SLICE_MILLIS, output);
+        for (int id = 1; id <= timers; id++) {
+            ringing.add(id, now);
+        }
+    }
+
+    // Every remote alarms, then staff acknowledge them in order
+    @Benchmark
+    public long raiseAndAcknowledgeAll() {
+        for (int id = 1; id <= timers; id++) dispatcher.add(id, now);
+        for (int id = 1; id <= timers; id++) dispatcher.remove(id, now);
+        return audibleChanges;
+    }
+
+    // One slice rotation with the whole fleet alarming (only ROUND_ROBIN does work)
+    @Benchmark
+    public long rotate() {
+        now += AlarmDispatcher.DEFAULT_SLICE_MILLIS;
+        return ringing.tick(now);
+    }
+}
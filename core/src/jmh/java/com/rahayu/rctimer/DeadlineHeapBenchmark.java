@@ -0,0 +1,49 @@
+package com.rahayu.rctimer;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The expiry queue: DeadlineHeap with every remote running
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DeadlineHeapBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int timers;
+
+    private DeadlineHeap heap;
+    private int seed = 42;
+
+    @Setup
+    public void setUp() {
+        heap = new DeadlineHeap(timers);
+        for (int id = 1; id <= timers; id++) {
+            heap.set(id, (long) id * 1000);
+        }
+    }
+
+    // Moving one running deadline (extend, default time edited)
+    @Benchmark
+    public int rescheduleOne() {
+        seed = seed * 1103515245 + 12345;
+        int id = 1 + (seed >>> 1) % timers;
+        heap.set(id, (seed >>> 8) * 7L);
+        return heap.peekId();
+    }
+
+    // Expiring the earliest deadline and starting it again for another rental
+    @Benchmark
+    public int pollAndReinsert() {
+        long deadline = heap.peekDeadline();
+        int id = heap.poll();
+        heap.set(id, deadline + timers * 1000L);
+        return id;
+    }
+}
@@ -0,0 +1,48 @@
+package com.rahayu.rctimer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// One 20 ms block of the alarm mixer, as the AlarmAudioEngine thread writes it;
+// it has to stay far below 20 ms with every voice of a busy floor ringing
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PcmMixerBenchmark {
+    private static final int SAMPLE_RATE = 24000; // AlarmAudioEngine.SAMPLE_RATE
+    private static final int BLOCK_FRAMES = SAMPLE_RATE / 50;
+
+    @Param({"1", "8", "64"})
+    public int voices;
+
+    private PcmMixer mixer;
+    private final short[] block = new short[BLOCK_FRAMES];
+
+    @Setup
+    public void setUp() {
+        // Clips of the bundled length (~3 s) with noise, and gains below unity
+        // so the fixed-point gain step is exercised; fixed seed for comparable runs
+        Random random = new Random(42);
+        mixer = new PcmMixer(SAMPLE_RATE);
+        for (int id = 1; id <= voices; id++) {
+            short[] pcm = new short[SAMPLE_RATE * 3 + random.nextInt(1000)];
+            for (int i = 0; i < pcm.length; i++) pcm[i] = (short) (random.nextGaussian() * 8000);
+            mixer.addVoice(id, new PcmClip(pcm, SAMPLE_RATE, 1));
+            mixer.setGain(id, 0.5f + random.nextFloat() / 2);
+        }
+    }
+
+    @Benchmark
+    public short[] mixBlock() {
+        mixer.mix(block, 0, BLOCK_FRAMES);
+        return block;
+    }
+}
@@ -0,0 +1,64 @@
+package com.rahayu.rctimer;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Formatting the countdown of every tile once, as a full redraw of the fleet does
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TimeFormatBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int timers;
+
+    private long[] remaining;
+    private final char[] buffer = new char[TimeFormat.MAX_LENGTH];
+
+    @Setup
+    public void setUp() {
+        // Mix of "mm:ss" and "hh:mm:ss" rentals, fixed seed for comparable runs
+        Random random = new Random(42);
+        remaining = new long[timers];
+        for (int i = 0; i < timers; i++) {
+            remaining[i] = (long) (random.nextDouble() * 2 * 60 * 60 * 1000L);
+        }
+    }
+
+    @Benchmark
+    public void formatFleet(Blackhole blackhole) {
+        for (int i = 0; i < timers; i++) {
+            blackhole.consume(TimeFormat.format(remaining[i], buffer));
+        }
+        blackhole.consume(buffer);
+    }
+
+    // Baseline: what the adapter did before TimeFormat, one String per tile
+    @Benchmark
+    public void formatFleetStringFormat(Blackhole blackhole) {
+        for (int i = 0; i < timers; i++) {
+            long minutes = (remaining[i] / 1000) / 60;
+            long seconds = (remaining[i] / 1000) % 60;
+            blackhole.consume(String.format(Locale.getDefault(), "%02d:%02d", minutes, seconds));
+        }
+    }
+
+    // The check views use to skip setText when the shown second did not change
+    @Benchmark
+    public long displaySecondsFleet() {
+        long sum = 0;
+        for (int i = 0; i < timers; i++) {
+            sum += TimeFormat.displaySeconds(remaining[i]);
+        }
+        return sum;
+    }
+}
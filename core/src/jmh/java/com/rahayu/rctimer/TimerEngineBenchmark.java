@@ -0,0 +1,105 @@
+package com.rahayu.rctimer;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Tick processing and command application against a fleet where every remote
+// is running, with deadlines spread over an hour (a busy afternoon). The
+// engine runs on a field-backed clock, so nothing here depends on wall time.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TimerEngineBenchmark {
+    private static final long DURATION = 60 * 60 * 1000L;
+
+    @Param({"10", "1000", "100000"})
+    public int timers;
+
+    private long now;
+    private TimerStore store;
+    private TimerEngine engine;
+    private CommandBus bus;
+    private final CommandBatch batch = new CommandBatch();
+    private int[] allIds;
+    private boolean paused;
+    private final Runnable startAll = this::startAll;
+    private final Runnable applyBatch = this::applyBatch;
+
+    @Setup
+    public void setUp() {
+        store = new TimerStore(timers, DURATION, timers);
+        engine = new TimerEngine(() -> now, store);
+        bus = new CommandBus(task -> { }, () -> { }); // Drained by hand below
+        allIds = new int[timers];
+        for (int i = 0; i < timers; i++) allIds[i] = i + 1;
+        engine.batch(startAll);
+    }
+
+    // Staggers the starts so the deadlines are spread over one DURATION
+    private void startAll() {
+        long base = now;
+        for (int id = 1; id <= timers; id++) {
+            now = base - DURATION + (long) id * DURATION / timers;
+            engine.reset(id);
+            engine.start(id);
+        }
+        now = base;
+    }
+
+    // The common case: a tick where nothing is due yet
+    @Benchmark
+    public boolean tickIdle() {
+        return engine.tick();
+    }
+
+    // Worst case burst: every remote expires in one tick, then all are started
+    // again in one batch (two snapshot publishes in total)
+    @Benchmark
+    public boolean expireAllAndRestart() {
+        now += DURATION;
+        boolean running = engine.tick();
+        engine.batch(startAll);
+        return running;
+    }
+
+    // A bulk START/PAUSE of the whole fleet through the bus: coalescing, drain,
+    // application and one snapshot publish
+    @Benchmark
+    public TimerSnapshot bulkCommandBatch() {
+        if (paused) {
+            bus.startSelected(allIds, timers);
+        } else {
+            for (int id = 1; id <= timers; id++) bus.pause(id);
+        }
+        paused = !paused;
+        bus.drainTo(batch);
+        engine.batch(applyBatch);
+        return engine.snapshot();
+    }
+
+    private void applyBatch() {
+        for (int i = 0; i < batch.size(); i++) {
+            int id = batch.idAt(i);
+            if ((batch.opsAt(i) & CommandBus.OP_PAUSE) != 0) engine.pause(id);
+            if ((batch.opsAt(i) & CommandBus.OP_START) != 0) engine.start(id);
+        }
+    }
+
+    // One tap: a single command still publishes a full snapshot of the fleet
+    @Benchmark
+    public TimerSnapshot singleCommand() {
+        if (store.isRunning(1)) {
+            engine.pause(1);
+        } else {
+            engine.start(1);
+        }
+        return engine.snapshot();
+    }
+}
@@ -0,0 +1,159 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Decides which alarming remotes are audible. Alarming ids live in an indexed,
+// insertion-ordered set (array-backed doubly linked list), so add, remove and
+// contains are O(1) and the owner of the active voice is always known.
+public class AlarmDispatcher {
+
+    public enum Policy {
+        MIX_ALL,     // Every alarming remote plays at once
+        ROUND_ROBIN, // One remote at a time, rotating every time slice
+        FIFO         // Oldest alarm plays until it is acknowledged
+    }
+
+    // Receives audibility changes; audible=true means (re)start the remote's voice
+    public interface Output {
+        void onAudibleChanged(int remoteId, boolean audible);
+    }
+
+    public static final long DEFAULT_SLICE_MILLIS = 6000;
+    private static final int NONE = 0; // Remote ids start at 1
+
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private boolean[] member = new boolean[16];
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    private final Output output;
+    private Policy policy;
+    private long sliceMillis;
+    private int activeOwner = NONE;
+    private long sliceEndsAt;
+    private long rotations;
+
+    public AlarmDispatcher(Policy policy, long sliceMillis, Output output) {
+        this.policy = policy;
+        this.sliceMillis = sliceMillis;
+        this.output = output;
+    }
+
+    public boolean contains(int id) {
+        return id < member.length && member[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Remote whose voice is in front: the announced one for ROUND_ROBIN/FIFO, the oldest for MIX_ALL
+    public int getActiveOwner() {
+        return size == 0 ? -1 : (policy == Policy.MIX_ALL ? head : activeOwner);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getRotations() {
+        return rotations;
+    }
+
+    public boolean add(int id, long now) {
+        if (contains(id)) return false;
+        ensureCapacity(id);
+        member[id] = true;
+        prev[id] = tail;
+        next[id] = NONE;
+        if (tail != NONE) next[tail] = id; else head = id;
+        tail = id;
+        size++;
+
+        if (policy == Policy.MIX_ALL) {
+            output.onAudibleChanged(id, true);
+        } else if (activeOwner == NONE) {
+            activate(id, now);
+        }
+        return true;
+    }
+
+    public boolean remove(int id, long now) {
+        if (!contains(id)) return false;
+        int after = next[id] != NONE ? next[id] : head;
+        unlink(id);
+
+        boolean wasAudible = policy == Policy.MIX_ALL || id == activeOwner;
+        if (wasAudible) output.onAudibleChanged(id, false);
+        if (id == activeOwner) {
+            activeOwner = NONE;
+            // Hand the voice to the next pending alarm (FIFO: the oldest one)
+            if (size > 0) activate(policy == Policy.FIFO ? head : (after == id ? head : after), now);
+        }
+        return true;
+    }
+
+    public void setPolicy(Policy newPolicy, long now) {
+        if (newPolicy == policy) return;
+        // Silence according to the old policy, then re-announce under the new one
+        for (int id = head; id != NONE; id = next[id]) {
+            if (policy == Policy.MIX_ALL || id == activeOwner) output.onAudibleChanged(id, false);
+        }
+        policy = newPolicy;
+        activeOwner = NONE;
+        if (size == 0) return;
+        if (policy == Policy.MIX_ALL) {
+            for (int id = head; id != NONE; id = next[id]) output.onAudibleChanged(id, true);
+        } else {
+            activate(head, now);
+        }
+    }
+
+    public void setSliceMillis(long sliceMillis) {
+        this.sliceMillis = sliceMillis;
+    }
+
+    // Rotates the round-robin voice when its slice is over. Returns the delay
+    // until the next rotation is due, or -1 when no rotation is pending.
+    public long tick(long now) {
+        if (policy != Policy.ROUND_ROBIN || size < 2) return -1;
+        if (now >= sliceEndsAt) {
+            int following = next[activeOwner] != NONE ? next[activeOwner] : head;
+            output.onAudibleChanged(activeOwner, false);
+            activeOwner = NONE;
+            activate(following, now);
+            rotations++;
+        }
+        return sliceEndsAt - now;
+    }
+
+    private void activate(int id, long now) {
+        activeOwner = id;
+        sliceEndsAt = now + sliceMillis;
+        output.onAudibleChanged(id, true);
+    }
+
+    private void unlink(int id) {
+        int p = prev[id];
+        int n = next[id];
+        if (p != NONE) next[p] = n; else head = n;
+        if (n != NONE) prev[n] = p; else tail = p;
+        member[id] = false;
+        next[id] = prev[id] = NONE;
+        size--;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < member.length) return;
+        int capacity = Math.max(id + 1, member.length * 2);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        member = Arrays.copyOf(member, capacity);
+    }
+}
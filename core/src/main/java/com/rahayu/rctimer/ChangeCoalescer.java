@@ -0,0 +1,52 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Accumulates per-remote change flags between deliveries. Marking the same id
+// several times only ORs its flags, so many changes within one frame collapse
+// into a single ChangeSet entry per remote.
+public class ChangeCoalescer {
+    private int[] flags = new int[16];   // Remote id -> pending change kinds
+    private int[] dirtyIds = new int[16];
+    private int dirtyCount;
+    private boolean fleetChanged;
+
+    public void mark(int id, int kind) {
+        if (id >= flags.length) {
+            flags = Arrays.copyOf(flags, Math.max(id + 1, flags.length * 2));
+        }
+        if (flags[id] == 0) {
+            if (dirtyCount == dirtyIds.length) {
+                dirtyIds = Arrays.copyOf(dirtyIds, dirtyCount * 2);
+            }
+            dirtyIds[dirtyCount++] = id;
+        }
+        flags[id] |= kind;
+    }
+
+    public void markFleetChanged() {
+        fleetChanged = true;
+    }
+
+    public boolean hasPending() {
+        return dirtyCount > 0 || fleetChanged;
+    }
+
+    // Moves everything pending into out (reusing its arrays) and clears the pending state
+    public void drainTo(ChangeSet out) {
+        if (out.ids.length < dirtyCount) {
+            out.ids = new int[dirtyIds.length];
+            out.kinds = new int[dirtyIds.length];
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            int id = dirtyIds[i];
+            out.ids[i] = id;
+            out.kinds[i] = flags[id];
+            flags[id] = 0;
+        }
+        out.count = dirtyCount;
+        out.fleetChanged = fleetChanged;
+        dirtyCount = 0;
+        fleetChanged = false;
+    }
+}
@@ -0,0 +1,33 @@
+package com.rahayu.rctimer;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Lock-free handoff of coalesced changes from the timing thread (single producer)
+// to the UI thread (single consumer). One ChangeSet circulates: the producer fills
+// and publishes it, the UI takes it and hands it back with release(). Until then
+// offer() refuses and the changes keep coalescing on the producer side, so a
+// stalled UI never blocks the engine, never makes it queue up work and nothing
+// is allocated per delivery.
+public class ChangeHandoff {
+    private final AtomicReference<ChangeSet> outbox = new AtomicReference<>();
+    private final AtomicReference<ChangeSet> spare = new AtomicReference<>(new ChangeSet());
+
+    // Producer: drains pending into the set and publishes it. False while the consumer
+    // has not taken and released the previous one.
+    public boolean offer(ChangeCoalescer pending) {
+        ChangeSet set = spare.getAndSet(null);
+        if (set == null) return false;
+        pending.drainTo(set);
+        outbox.set(set);
+        return true;
+    }
+
+    // Consumer: the published set, or null if there is nothing new. Hand it back with release().
+    public ChangeSet take() {
+        return outbox.getAndSet(null);
+    }
+
+    public void release(ChangeSet set) {
+        spare.set(set);
+    }
+}
@@ -0,0 +1,35 @@
+package com.rahayu.rctimer;
+
+// Coalesced description of what changed since the previous delivery:
+// which remote ids changed and in what way. Instances are reused between
+// deliveries, so listeners must not hold on to them.
+public class ChangeSet {
+    public static final int CHANGE_STATE = 2;  // Started, paused, reset or default time edited
+    public static final int CHANGE_ALARM = 4;  // Alarm started or stopped
+
+    int[] ids = new int[16];
+    int[] kinds = new int[16];
+    int count;
+    boolean fleetChanged;
+
+    public int size() {
+        return count;
+    }
+
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    public int kindAt(int index) {
+        return kinds[index];
+    }
+
+    // Fleet was resized (or the listener just registered), treat every remote as changed
+    public boolean isFleetChanged() {
+        return fleetChanged;
+    }
+
+    public boolean isEmpty() {
+        return count == 0 && !fleetChanged;
+    }
+}
@@ -0,0 +1,7 @@
+package com.rahayu.rctimer;
+
+// Monotonic time source in milliseconds.
+// TimerService uses SystemClock.elapsedRealtime(), tests/simulations can plug in a virtual clock.
+public interface Clock {
+    long now();
+}
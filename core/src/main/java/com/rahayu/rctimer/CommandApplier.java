@@ -0,0 +1,138 @@
+package com.rahayu.rctimer;
+
+// Applies drained CommandBatches (and states taken over from peer devices) to
+// the engine, in CommandBus.OP_* order, and keeps the session bookkeeping in
+// step. Whatever lives outside the core (alarm sound, journal, change delivery,
+// peers) is reached through Effects, so the service and the load simulator run
+// exactly the same command semantics.
+//
+// Single threaded: the owner calls apply() from the thread that drives the engine.
+public class CommandApplier {
+
+    public interface Effects {
+        // The remote's alarm ends, silence it
+        void onAlarmStopped(int remoteId);
+
+        // The remote was touched by the batch or by a peer; kind is ChangeSet.CHANGE_* flags
+        void onRemoteChanged(int remoteId, int kind);
+
+        // A command given on this device changed the remote (ops are CommandBus.OP_*),
+        // after onRemoteChanged; this is what peers get to see
+        void onLocalChange(int remoteId, int ops);
+
+        // The fleet was resized to store.size()
+        void onFleetResized();
+    }
+
+    private final TimerEngine engine;
+    private final TimerStore store;
+    private final SessionRecorder sessions;
+    private final Effects effects;
+    private CommandBatch batch;
+    private final Runnable applyBatch = this::applyBatch;
+
+    public CommandApplier(TimerEngine engine, SessionRecorder sessions, Effects effects) {
+        this.engine = engine;
+        this.store = engine.getStore();
+        this.sessions = sessions;
+        this.effects = effects;
+    }
+
+    // Runs the whole batch as one engine batch (one snapshot publish)
+    public void apply(CommandBatch batch) {
+        this.batch = batch;
+        try {
+            engine.batch(applyBatch);
+        } finally {
+            this.batch = null;
+        }
+    }
+
+    private void applyBatch() {
+        if (batch.getFleetSize() > 0) {
+            setFleetSize(batch.getFleetSize());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            applyCommands(batch.idAt(i), batch.opsAt(i), batch.defaultMillisAt(i), batch.extendMillisAt(i));
+        }
+        if (batch.isResetExpired()) {
+            for (int id = 1; id <= store.size(); id++) {
+                if (store.isAlarming(id)) applyCommands(id, CommandBus.OP_RESET, 0, 0);
+            }
+        }
+    }
+
+    private void applyCommands(int id, int ops, long defaultMillis, long extendMillis) {
+        if (!store.contains(id)) return;
+        int kind = ChangeSet.CHANGE_STATE;
+        if (store.isAlarming(id) && (ops & (CommandBus.OP_STOP_ALARM | CommandBus.OP_RESET
+                | CommandBus.OP_START | CommandBus.OP_EXTEND)) != 0) {
+            // Any of these ends the alarm
+            effects.onAlarmStopped(id);
+            kind |= ChangeSet.CHANGE_ALARM;
+        }
+        if ((ops & CommandBus.OP_STOP_ALARM) != 0) {
+            engine.stopAlarm(id);
+            sessions.onStopAlarm(id);
+        }
+        if ((ops & CommandBus.OP_RESET) != 0) {
+            engine.reset(id);
+            sessions.onReset(id);
+        }
+        if ((ops & CommandBus.OP_SET_DEFAULT) != 0) {
+            engine.setDefaultTime(id, defaultMillis);
+        }
+        if ((ops & CommandBus.OP_PAUSE) != 0) {
+            engine.pause(id);
+            sessions.onPause(id);
+        }
+        if ((ops & CommandBus.OP_START) != 0) {
+            engine.start(id);
+            sessions.onStart(id);
+        }
+        if ((ops & CommandBus.OP_EXTEND) != 0) {
+            // Extending an expired rental acknowledges its alarm
+            if (store.isAlarming(id)) sessions.onStopAlarm(id);
+            engine.extend(id, extendMillis);
+        }
+        effects.onRemoteChanged(id, kind);
+        effects.onLocalChange(id, ops);
+    }
+
+    // Takes over a state decided on another device (see PeerSync). Sessions are
+    // kept as if the ops had been given here; an alarm that has not gone off
+    // here yet is left to the engine's own expiry, so it rings the usual way.
+    public void applyRemote(int id, int ops, byte state, long deadline, long remaining, long defaultMillis) {
+        if (!store.contains(id)) return;
+        int kind = ChangeSet.CHANGE_STATE;
+        boolean wasAlarming = store.isAlarming(id);
+        if (wasAlarming && state != TimerStore.STATE_ALARMING) {
+            effects.onAlarmStopped(id);
+            kind |= ChangeSet.CHANGE_ALARM;
+        }
+        boolean ended = (ops & (CommandBus.OP_STOP_ALARM | CommandBus.OP_RESET | CommandBus.OP_START)) != 0;
+        if ((ops & CommandBus.OP_STOP_ALARM) != 0
+                || wasAlarming && !ended && (ops & CommandBus.OP_EXTEND) != 0) {
+            sessions.onStopAlarm(id);
+        }
+        if ((ops & CommandBus.OP_RESET) != 0) sessions.onReset(id);
+        if ((ops & CommandBus.OP_PAUSE) != 0) sessions.onPause(id);
+        if ((ops & CommandBus.OP_START) != 0) sessions.onStart(id);
+        if (state == TimerStore.STATE_ALARMING && !wasAlarming) {
+            engine.restore(id, TimerStore.STATE_RUNNING, engine.now(), 0, defaultMillis);
+        } else {
+            engine.restore(id, state, deadline, remaining, defaultMillis);
+        }
+        effects.onRemoteChanged(id, kind);
+    }
+
+    private void setFleetSize(int size) {
+        // Silence remotes that are about to be dropped from the fleet
+        for (int id = size + 1; id <= store.size(); id++) {
+            if (store.isAlarming(id)) effects.onAlarmStopped(id);
+        }
+        engine.setFleetSize(size);
+        sessions.resize(store.size());
+        effects.onFleetResized();
+    }
+}
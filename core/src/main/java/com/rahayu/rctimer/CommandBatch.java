@@ -0,0 +1,54 @@
+package com.rahayu.rctimer;
+
+// One drained batch of coalesced commands: per remote, which operations to
+// apply (CommandBus.OP_* flags) and their arguments, plus the fleet-wide ones.
+// Instances are reused between drains.
+public class CommandBatch {
+    int[] ids = new int[16];
+    int[] ops = new int[16];
+    long[] defaultMillis = new long[16];
+    long[] extendMillis = new long[16];
+    int count;
+    int fleetSize = -1;
+    boolean resetExpired;
+    long submittedNanos;
+
+    public int size() {
+        return count;
+    }
+
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    public int opsAt(int index) {
+        return ops[index];
+    }
+
+    public long defaultMillisAt(int index) {
+        return defaultMillis[index];
+    }
+
+    public long extendMillisAt(int index) {
+        return extendMillis[index];
+    }
+
+    // New fleet size to apply before the per-remote commands, or -1
+    public int getFleetSize() {
+        return fleetSize;
+    }
+
+    // Reset every remote that is alarming when the batch is applied
+    public boolean isResetExpired() {
+        return resetExpired;
+    }
+
+    // System.nanoTime() of the first command in the batch, for latency metrics
+    public long getSubmittedNanos() {
+        return submittedNanos;
+    }
+
+    public boolean isEmpty() {
+        return count == 0 && fleetSize < 0 && !resetExpired;
+    }
+}
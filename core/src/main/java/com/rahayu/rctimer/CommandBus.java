@@ -0,0 +1,168 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+// Typed command queue between the UI and the timer engine. Commands can be
+// submitted from any thread; they are coalesced per remote until the owner
+// drains them as one CommandBatch, which TimerService applies atomically.
+//
+// Coalescing keeps only the net effect per remote: START and PAUSE cancel each
+// other out (last one wins), RESET drops earlier START/PAUSE/extensions, a new
+// default drops earlier extensions, and extensions add up. A dropped START or
+// extension still leaves its acknowledgement of an alarm behind (STOP_ALARM).
+// The first submit after a drain hands one drain task to the executor, so a
+// burst of taps costs one batch and one state change.
+//
+// The batch is applied in OP_* order, not submit order. Every pair that can
+// still be pending together ends in the same state either way; for example
+// START then SET_DEFAULT runs as SET_DEFAULT then START, and both leave the
+// remote running from the new default.
+public class CommandBus {
+    // Applied in this order
+    public static final int OP_STOP_ALARM = 1;
+    public static final int OP_RESET = 2;
+    public static final int OP_SET_DEFAULT = 4;
+    public static final int OP_PAUSE = 8;
+    public static final int OP_START = 16;
+    public static final int OP_EXTEND = 32;
+
+    // Ops that end an alarm when applied to an alarming remote (see CommandApplier)
+    private static final int ENDS_ALARM = OP_STOP_ALARM | OP_RESET | OP_START | OP_EXTEND;
+
+    private final Executor executor;
+    private final Runnable drainTask;
+
+    // Guarded by this
+    private int[] ops = new int[16];   // Remote id -> pending OP_* flags
+    private long[] defaultMillis = new long[16];
+    private long[] extendMillis = new long[16];
+    private int[] dirtyIds = new int[16];
+    private int dirtyCount;
+    private int fleetSize = -1;
+    private boolean resetExpired;
+    private boolean drainPosted;
+    private long firstSubmitNanos;
+    private long submitted;
+    private long batches;
+
+    public CommandBus(Executor executor, Runnable drainTask) {
+        this.executor = executor;
+        this.drainTask = drainTask;
+    }
+
+    public void start(int id) {
+        submit(id, OP_START, OP_PAUSE, 0, 0);
+    }
+
+    public void pause(int id) {
+        submit(id, OP_PAUSE, OP_START, 0, 0);
+    }
+
+    public void reset(int id) {
+        submit(id, OP_RESET, OP_START | OP_PAUSE | OP_EXTEND, 0, 0);
+    }
+
+    public void stopAlarm(int id) {
+        submit(id, OP_STOP_ALARM, 0, 0, 0);
+    }
+
+    // A new default also resets the current countdown, so pending extensions are dropped
+    public void setDefault(int id, long millis) {
+        submit(id, OP_SET_DEFAULT, OP_EXTEND, millis, 0);
+    }
+
+    public void extend(int id, long millis) {
+        submit(id, OP_EXTEND, 0, 0, millis);
+    }
+
+    // Bulk operations, applied in the same batch
+
+    public synchronized void startSelected(int[] ids, int count) {
+        for (int i = 0; i < count; i++) start(ids[i]);
+    }
+
+    public synchronized void extendSelected(int[] ids, int count, long millis) {
+        for (int i = 0; i < count; i++) extend(ids[i], millis);
+    }
+
+    public synchronized void resetAllExpired() {
+        resetExpired = true;
+        schedule();
+    }
+
+    public synchronized void setFleetSize(int size) {
+        fleetSize = size;
+        schedule();
+    }
+
+    public synchronized long getSubmittedCount() {
+        return submitted;
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    private synchronized void submit(int id, int op, int cancels, long defaultValue, long extendValue) {
+        if (id < 1) return;
+        if (id >= ops.length) {
+            int cap = Math.max(id + 1, ops.length * 2);
+            ops = Arrays.copyOf(ops, cap);
+            defaultMillis = Arrays.copyOf(defaultMillis, cap);
+            extendMillis = Arrays.copyOf(extendMillis, cap);
+        }
+        if (ops[id] == 0) {
+            if (dirtyCount == dirtyIds.length) {
+                dirtyIds = Arrays.copyOf(dirtyIds, dirtyCount * 2);
+            }
+            dirtyIds[dirtyCount++] = id;
+        }
+        if ((cancels & OP_EXTEND) != 0) extendMillis[id] = 0;
+        int dropped = ops[id] & cancels;
+        ops[id] = (ops[id] & ~cancels) | op;
+        if ((dropped & (OP_START | OP_EXTEND)) != 0 && (ops[id] & ENDS_ALARM) == 0) {
+            ops[id] |= OP_STOP_ALARM;
+        }
+        if (op == OP_SET_DEFAULT) defaultMillis[id] = defaultValue;
+        if (op == OP_EXTEND) extendMillis[id] += extendValue;
+        submitted++;
+        schedule();
+    }
+
+    private void schedule() {
+        if (drainPosted) return;
+        drainPosted = true;
+        firstSubmitNanos = System.nanoTime();
+        executor.execute(drainTask);
+    }
+
+    // Moves everything pending into out (reusing its arrays) and clears the pending state
+    public synchronized void drainTo(CommandBatch out) {
+        if (out.ids.length < dirtyCount) {
+            out.ids = new int[dirtyIds.length];
+            out.ops = new int[dirtyIds.length];
+            out.defaultMillis = new long[dirtyIds.length];
+            out.extendMillis = new long[dirtyIds.length];
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            int id = dirtyIds[i];
+            out.ids[i] = id;
+            out.ops[i] = ops[id];
+            out.defaultMillis[i] = defaultMillis[id];
+            out.extendMillis[i] = extendMillis[id];
+            ops[id] = 0;
+            defaultMillis[id] = 0;
+            extendMillis[id] = 0;
+        }
+        out.count = dirtyCount;
+        out.fleetSize = fleetSize;
+        out.resetExpired = resetExpired;
+        out.submittedNanos = firstSubmitNanos;
+        dirtyCount = 0;
+        fleetSize = -1;
+        resetExpired = false;
+        drainPosted = false;
+        batches++;
+    }
+}
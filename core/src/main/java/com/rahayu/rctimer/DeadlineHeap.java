@@ -0,0 +1,155 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Indexed binary min-heap of running deadlines keyed by remote id.
+// set/remove/poll are O(log n), peek is O(1), and nothing is allocated
+// after the arrays have grown to the fleet size.
+public class DeadlineHeap {
+    private int[] ids;    // Heap slot -> remote id
+    private long[] keys;  // Heap slot -> deadline
+    private int[] slots;  // Remote id -> heap slot + 1 (0 = not in heap)
+    private int size;
+
+    public DeadlineHeap(int maxId) {
+        ids = new int[Math.max(1, maxId)];
+        keys = new long[ids.length];
+        slots = new int[ids.length + 1];
+    }
+
+    public void ensureCapacity(int maxId) {
+        if (maxId < slots.length) return;
+        int capacity = Math.max(maxId, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        slots = Arrays.copyOf(slots, capacity + 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return id < slots.length && slots[id] != 0;
+    }
+
+    // Heap order, not deadline order; slot must be < size()
+    public int idAt(int slot) {
+        return ids[slot];
+    }
+
+    // Visits every id whose deadline is <= limit, pruning subtrees that start later.
+    // Cost is proportional to the number of matches, no sorting and no allocation.
+    public void forEachUntil(long limit, IntConsumer action) {
+        visitUntil(0, limit, action);
+    }
+
+    private void visitUntil(int slot, long limit, IntConsumer action) {
+        if (slot >= size || keys[slot] > limit) return;
+        action.accept(ids[slot]);
+        visitUntil(2 * slot + 1, limit, action);
+        visitUntil(2 * slot + 2, limit, action);
+    }
+
+    public int peekId() {
+        return size == 0 ? -1 : ids[0];
+    }
+
+    public long peekDeadline() {
+        return size == 0 ? -1 : keys[0];
+    }
+
+    // Inserts the id, or moves it if it is already queued
+    public void set(int id, long deadline) {
+        ensureCapacity(id);
+        int slot = slots[id] - 1;
+        if (slot < 0) {
+            slot = size++;
+            ids[slot] = id;
+            keys[slot] = deadline;
+            slots[id] = slot + 1;
+            siftUp(slot);
+        } else {
+            long old = keys[slot];
+            keys[slot] = deadline;
+            if (deadline < old) siftUp(slot); else siftDown(slot);
+        }
+    }
+
+    public boolean remove(int id) {
+        if (!contains(id)) return false;
+        removeAt(slots[id] - 1);
+        return true;
+    }
+
+    // Removes and returns the id with the earliest deadline, or -1 when empty
+    public int poll() {
+        if (size == 0) return -1;
+        int id = ids[0];
+        removeAt(0);
+        return id;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) slots[ids[i]] = 0;
+        size = 0;
+    }
+
+    private void removeAt(int slot) {
+        int removedId = ids[slot];
+        slots[removedId] = 0;
+        int last = --size;
+        if (slot == last) return;
+
+        // Move the last entry into the hole and restore heap order
+        ids[slot] = ids[last];
+        keys[slot] = keys[last];
+        slots[ids[slot]] = slot + 1;
+        siftDown(slot);
+        siftUp(slot);
+    }
+
+    private void siftUp(int slot) {
+        int id = ids[slot];
+        long key = keys[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            move(parent, slot);
+            slot = parent;
+        }
+        place(id, key, slot);
+    }
+
+    private void siftDown(int slot) {
+        int id = ids[slot];
+        long key = keys[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) child = right;
+            if (key <= keys[child]) break;
+            move(child, slot);
+            slot = child;
+        }
+        place(id, key, slot);
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        keys[to] = keys[from];
+        slots[ids[to]] = to + 1;
+    }
+
+    private void place(int id, long key, int slot) {
+        ids[slot] = id;
+        keys[slot] = key;
+        slots[id] = slot + 1;
+    }
+}
@@ -0,0 +1,83 @@
+package com.rahayu.rctimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Decoder for the compact voice clips produced by the transcodeAudio build step
+// (app/build.gradle). Layout, little endian:
+//   "RIMA", u8 version (1), u8 channels (1), u16 reserved,
+//   i32 sampleRate, i32 sampleCount, i32 samplesPerBlock,
+//   blocks of { i16 predictor, u8 stepIndex, u8 reserved, 4-bit IMA ADPCM codes (low nibble first) }
+public final class ImaAdpcm {
+    private static final int HEADER_SIZE = 20;
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+            253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+            1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+            3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487,
+            12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+    private ImaAdpcm() {
+    }
+
+    public static PcmClip decode(InputStream in) throws IOException {
+        return decode(readAll(in));
+    }
+
+    public static PcmClip decode(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || data[0] != 'R' || data[1] != 'I' || data[2] != 'M' || data[3] != 'A') {
+            throw new IOException("Not an IMA ADPCM clip");
+        }
+        if (data[4] != 1 || data[5] != 1) {
+            throw new IOException("Unsupported clip version " + data[4] + " / channels " + data[5]);
+        }
+        int sampleRate = readInt(data, 8);
+        int sampleCount = readInt(data, 12);
+        int samplesPerBlock = readInt(data, 16);
+        if (sampleCount < 0 || samplesPerBlock <= 0) throw new IOException("Corrupt clip header");
+
+        short[] samples = new short[sampleCount];
+        int pos = HEADER_SIZE;
+        for (int start = 0; start < sampleCount; start += samplesPerBlock) {
+            int n = Math.min(samplesPerBlock, sampleCount - start);
+            if (pos + 4 + (n + 1) / 2 > data.length) throw new IOException("Truncated clip");
+
+            int predictor = (short) ((data[pos] & 0xFF) | (data[pos + 1] << 8));
+            int index = Math.min(88, data[pos + 2] & 0xFF);
+            pos += 4;
+            for (int i = 0; i < n; i++) {
+                int nibble = (i & 1) == 0 ? data[pos] & 0x0F : (data[pos++] >> 4) & 0x0F;
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if ((nibble & 4) != 0) delta += step;
+                if ((nibble & 2) != 0) delta += step >> 1;
+                if ((nibble & 1) != 0) delta += step >> 2;
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+                index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble & 7]));
+                samples[start + i] = (short) predictor;
+            }
+            if ((n & 1) == 1) pos++;
+        }
+        return new PcmClip(samples, sampleRate, 1);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, in.available()));
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] << 24);
+    }
+}
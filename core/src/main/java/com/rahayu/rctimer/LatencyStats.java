@@ -0,0 +1,97 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Latency histogram in nanoseconds, laid out like HdrHistogram: values below
+// 64 get a bucket each, above that every power of two is split into 32 linear
+// sub-buckets, so any recorded value is kept to within ~3% (1/32) at a fixed
+// ~15 KB per histogram. Recording is one array increment, no allocation.
+// Percentiles report the highest value equivalent to the bucket, as
+// HdrHistogram does.
+public class LatencyStats {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;  // Sub-buckets per power of two
+    private static final int LINEAR_LIMIT = SUB_COUNT * 2; // Below this, one bucket per value
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+    private long lastNanos;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) nanos = 0; // Clock granularity, never meaningful as "early"
+        counts[indexOf(nanos)]++;
+        count++;
+        totalNanos += nanos;
+        lastNanos = nanos;
+        if (nanos < minNanos) minNanos = nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    // Smallest recorded bucket value that percentile (0..100) of samples do not exceed
+    public synchronized long getPercentileNanos(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(maxNanos, highestOf(i));
+        }
+        return maxNanos;
+    }
+
+    // {"n":..,"mean_ms":..,"p50_ms":..,"p90_ms":..,"p99_ms":..,"p999_ms":..,"max_ms":..}
+    public synchronized void appendJson(StringBuilder out) {
+        out.append(String.format(Locale.US,
+                "{\"n\":%d,\"mean_ms\":%.3f,\"p50_ms\":%.3f,\"p90_ms\":%.3f,\"p99_ms\":%.3f,\"p999_ms\":%.3f,\"max_ms\":%.3f}",
+                count, getMeanMillis(), getPercentileNanos(50) / 1e6, getPercentileNanos(90) / 1e6,
+                getPercentileNanos(99) / 1e6, getPercentileNanos(99.9) / 1e6, maxNanos / 1e6));
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) return "n=0";
+        return String.format(Locale.US, "n=%d last=%.1fms mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                count, lastNanos / 1e6, getMeanMillis(), getPercentileNanos(50) / 1e6,
+                getPercentileNanos(90) / 1e6, getPercentileNanos(99) / 1e6, maxNanos / 1e6);
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        // Keep the top SUB_BITS + 1 bits: value >> shift lands in [SUB_COUNT, 2 * SUB_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestOf(int index) {
+        if (index < LINEAR_LIMIT) return index;
+        int shift = index / SUB_COUNT - 1;
+        long sub = index - (long) shift * SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,98 @@
+package com.rahayu.rctimer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Decoded clips keyed by remote id, decoded lazily on first use and capped at a
+// fixed number of PCM bytes. The least recently used clips are evicted to make
+// room; a clip larger than the whole budget is returned but never kept.
+public class PcmCache {
+
+    public interface Loader {
+        PcmClip load(int remoteId) throws Exception;
+    }
+
+    private final long budgetBytes;
+    private final Loader loader;
+    private final LinkedHashMap<Integer, PcmClip> clips = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long peakBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PcmCache(long budgetBytes, Loader loader) {
+        this.budgetBytes = budgetBytes;
+        this.loader = loader;
+    }
+
+    // Returns the cached clip, decoding it on a miss. Null if the loader has nothing for this id.
+    public PcmClip get(int remoteId) throws Exception {
+        synchronized (this) {
+            PcmClip clip = clips.get(remoteId);
+            if (clip != null) {
+                hits++;
+                return clip;
+            }
+            misses++;
+        }
+
+        // Decode outside the lock so a slow load does not block cache hits
+        PcmClip clip = loader.load(remoteId);
+        if (clip != null) put(remoteId, clip);
+        return clip;
+    }
+
+    // The cached clip without ever decoding, null on a miss; a hit counts like get()
+    public synchronized PcmClip getIfCached(int remoteId) {
+        PcmClip clip = clips.get(remoteId);
+        if (clip != null) hits++;
+        return clip;
+    }
+
+    // Cheap membership check that does not count as a use
+    public synchronized boolean contains(int remoteId) {
+        return clips.containsKey(remoteId);
+    }
+
+    public synchronized boolean put(int remoteId, PcmClip clip) {
+        PcmClip old = clips.remove(remoteId);
+        if (old != null) usedBytes -= old.sizeInBytes();
+        if (clip.sizeInBytes() > budgetBytes) return false;
+
+        Iterator<Map.Entry<Integer, PcmClip>> it = clips.entrySet().iterator();
+        while (usedBytes + clip.sizeInBytes() > budgetBytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().sizeInBytes();
+            it.remove();
+            evictions++;
+        }
+        clips.put(remoteId, clip);
+        usedBytes += clip.sizeInBytes();
+        peakBytes = Math.max(peakBytes, usedBytes);
+        return true;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "clips=" + clips.size() + " used=" + usedBytes + "/" + budgetBytes + "B peak=" + peakBytes
+                + "B hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+    }
+}
@@ -0,0 +1,22 @@
+package com.rahayu.rctimer;
+
+// Decoded 16-bit PCM audio held in memory, interleaved when stereo
+public final class PcmClip {
+    public final short[] samples;
+    public final int sampleRate;
+    public final int channels;
+
+    public PcmClip(short[] samples, int sampleRate, int channels) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    public int frameCount() {
+        return samples.length / channels;
+    }
+
+    public int sizeInBytes() {
+        return samples.length * 2;
+    }
+}
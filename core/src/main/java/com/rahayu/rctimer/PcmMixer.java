@@ -0,0 +1,164 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Mixes any number of looping mono voices into one 16-bit stream.
+// Control threads add/remove voices and change gains (copy-on-write voice array),
+// the audio thread calls mix() and is the only one touching play positions.
+// A block limiter keeps the sum from clipping when many alarms overlap.
+public class PcmMixer {
+    private static final int GAIN_ONE = 1 << 12;        // Fixed-point unity gain
+    private static final float LIMITER_RELEASE = 0.02f; // Gain recovery per block
+
+    public static final class Voice {
+        final int id;
+        final short[] pcm;
+        final long addedNanos;
+        int position;          // Audio thread only
+        boolean started;       // Audio thread only
+        volatile int gain = GAIN_ONE;
+
+        Voice(int id, short[] pcm) {
+            this.id = id;
+            this.pcm = pcm;
+            this.addedNanos = System.nanoTime();
+        }
+    }
+
+    private final int sampleRate;
+    private volatile Voice[] voices = new Voice[0];
+    private int[] accumulator = new int[0];
+    private float limiterGain = 1f;
+    private LatencyStats startLatency;
+
+    public PcmMixer(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    // Records the delay from addVoice() to the voice's first mixed block
+    public void setStartLatency(LatencyStats stats) {
+        this.startLatency = stats;
+    }
+
+    // Starts (or restarts) a looping voice; the clip is converted to the mixer format if needed
+    public synchronized void addVoice(int id, PcmClip clip) {
+        short[] pcm = conform(clip, sampleRate);
+        if (pcm.length == 0) return;
+        Voice[] current = voices;
+        int index = indexOf(current, id);
+        Voice[] next;
+        if (index >= 0) {
+            next = current.clone();
+        } else {
+            next = Arrays.copyOf(current, current.length + 1);
+            index = current.length;
+        }
+        next[index] = new Voice(id, pcm);
+        voices = next;
+    }
+
+    // Stops one voice, the others keep their positions untouched
+    public synchronized boolean removeVoice(int id) {
+        Voice[] current = voices;
+        int index = indexOf(current, id);
+        if (index < 0) return false;
+        Voice[] next = new Voice[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, next.length - index);
+        voices = next;
+        return true;
+    }
+
+    public synchronized void clear() {
+        voices = new Voice[0];
+    }
+
+    public void setGain(int id, float gain) {
+        Voice[] current = voices;
+        int index = indexOf(current, id);
+        if (index >= 0) {
+            current[index].gain = Math.round(Math.max(0f, gain) * GAIN_ONE);
+        }
+    }
+
+    public int getVoiceCount() {
+        return voices.length;
+    }
+
+    // Fills out[offset, offset + frames) and returns the number of voices mixed
+    public int mix(short[] out, int offset, int frames) {
+        Voice[] active = voices;
+        if (accumulator.length < frames) accumulator = new int[frames];
+        int[] acc = accumulator;
+        Arrays.fill(acc, 0, frames, 0);
+
+        for (Voice v : active) {
+            if (!v.started) {
+                v.started = true;
+                if (startLatency != null) startLatency.record(System.nanoTime() - v.addedNanos);
+            }
+            int gain = v.gain;
+            short[] pcm = v.pcm;
+            int pos = v.position;
+            for (int i = 0; i < frames; i++) {
+                acc[i] += (pcm[pos] * gain) >> 12;
+                if (++pos == pcm.length) pos = 0; // Loop until stopped
+            }
+            v.position = pos;
+        }
+
+        // Limiter: instant attack when the sum would clip, slow release afterwards
+        int peak = 0;
+        for (int i = 0; i < frames; i++) {
+            int a = Math.abs(acc[i]);
+            if (a > peak) peak = a;
+        }
+        float target = peak > Short.MAX_VALUE ? (float) Short.MAX_VALUE / peak : 1f;
+        limiterGain = target < limiterGain ? target : Math.min(target, limiterGain + LIMITER_RELEASE);
+
+        float g = limiterGain;
+        for (int i = 0; i < frames; i++) {
+            int s = g == 1f ? acc[i] : Math.round(acc[i] * g);
+            out[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, s));
+        }
+        return active.length;
+    }
+
+    // Downmixes to mono and linearly resamples to the mixer rate
+    static short[] conform(PcmClip clip, int targetRate) {
+        short[] mono = clip.samples;
+        if (clip.channels > 1) {
+            int frames = clip.frameCount();
+            mono = new short[frames];
+            for (int f = 0; f < frames; f++) {
+                int sum = 0;
+                for (int c = 0; c < clip.channels; c++) sum += clip.samples[f * clip.channels + c];
+                mono[f] = (short) (sum / clip.channels);
+            }
+        }
+        if (clip.sampleRate == targetRate || mono.length == 0) return mono;
+
+        int outLength = (int) ((long) mono.length * targetRate / clip.sampleRate);
+        short[] out = new short[outLength];
+        double step = (double) clip.sampleRate / targetRate;
+        for (int i = 0; i < outLength; i++) {
+            double src = i * step;
+            int i0 = (int) src;
+            int i1 = Math.min(i0 + 1, mono.length - 1);
+            double frac = src - i0;
+            out[i] = (short) Math.round(mono[i0] * (1 - frac) + mono[i1] * frac);
+        }
+        return out;
+    }
+
+    private static int indexOf(Voice[] vs, int id) {
+        for (int i = 0; i < vs.length; i++) {
+            if (vs[i].id == id) return i;
+        }
+        return -1;
+    }
+}
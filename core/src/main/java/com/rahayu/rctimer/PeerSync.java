@@ -0,0 +1,568 @@
+package com.rahayu.rctimer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the timer state of several devices on one LAN in step. Every start,
+// pause, reset... made here goes out as one SyncDelta to all connected peers;
+// ticks never do, each device counts down from the deadline on its own.
+//
+// Conflicts: each remote is a last-writer-wins register ordered by Lamport
+// clock, ties broken by origin id (SyncDelta.supersedes), so all devices end up
+// with the same state whatever the arrival order. Deltas are relayed to the
+// other peers, so a chain A - B - C converges too.
+//
+// Catch-up: every device remembers, per origin, the highest contiguous seq it
+// has seen (plus the seqs above it that already arrived out of order, so a
+// delta is applied and relayed once however many paths it takes) and keeps the
+// last LOG_CAPACITY deltas. On (re)connect both sides
+// send that vector in HELLO and the other side answers with the logged deltas
+// the peer is missing, or with a snapshot of all registers when its log no
+// longer reaches back that far.
+//
+// Wire format, one TCP connection per pair of devices, frames of
+// [type u8][length varint][payload]:
+//   HELLO     magic, protocol, origin, lamport, vector
+//   SNAPSHOT  register count, deltas, vector
+//   DELTA     one SyncDelta
+//   PING      empty, sent when a link is idle so dead peers are noticed
+//
+// Origin ids are meant to be fresh for every run of the owner, so seq numbers
+// never have to survive a restart; only the Lamport clock is carried over
+// (getLamport() / constructor), otherwise changes made right after a restart
+// would lose against older ones.
+//
+// Thread safe. Network work runs on its own daemon threads; Host callbacks come
+// from those threads with the sync lock held and must only hand work off.
+public class PeerSync implements Closeable {
+    public static final int PROTOCOL = 1;
+    public static final int LOG_CAPACITY = 4096;
+
+    static final long PING_MS = 5000;
+    static final long READ_TIMEOUT_MS = 3 * PING_MS;
+    static final int CONNECT_TIMEOUT_MS = 5000;
+    static final long RECONNECT_MIN_MS = 1000;
+    static final long RECONNECT_MAX_MS = 30000;
+
+    static final int MAGIC = 0x52435359; // "RCSY"
+    static final int FRAME_HELLO = 1;
+    static final int FRAME_SNAPSHOT = 2;
+    static final int FRAME_DELTA = 3;
+    static final int FRAME_PING = 4;
+    private static final int MAX_FRAME = 1 << 20;
+    // A peer this far behind is dropped and catches up on reconnect instead
+    private static final int MAX_OUTBOX = 8192;
+    private static final byte[] PING = {FRAME_PING, 0};
+
+    public interface Host {
+        // A delta from a peer won its remote's register. Apply it on the engine
+        // thread, after checking isCurrent() there (a newer one may have won since).
+        void onDelta(SyncDelta delta);
+
+        // Number of connected peers changed
+        void onPeersChanged(int peers);
+    }
+
+    private final Clock clock;
+    private final Clock wallClock;
+    private final long origin;
+    private final Host host;
+
+    // Guarded by this
+    private long lamport;
+    private long localSeq;
+    private SyncDelta[] registers = new SyncDelta[TimerStore.MAX_FLEET_SIZE + 1];
+    private final Map<Long, Long> seen = new HashMap<>();    // origin -> highest contiguous seq
+    private final Map<Long, TreeSet<Long>> ahead = new HashMap<>(); // origin -> seqs received above it
+    private final Map<Long, Long> evicted = new HashMap<>(); // origin -> highest seq not in the log
+    private final ArrayDeque<SyncDelta> log = new ArrayDeque<>();
+    private final List<Link> links = new ArrayList<>();
+    private final Map<String, Thread> dialers = new HashMap<>();
+    private ServerSocket server;
+    private boolean closed;
+    private long sentCount;
+    private long receivedCount;
+    private long snapshotCount;
+
+    // clock is the engine's clock (deadlines), wallClock the shared time base on the wire
+    public PeerSync(Clock clock, Clock wallClock, long origin, long lamport, Host host) {
+        this.clock = clock;
+        this.wallClock = wallClock;
+        this.origin = origin;
+        this.lamport = lamport;
+        this.host = host;
+    }
+
+    public long getOrigin() {
+        return origin;
+    }
+
+    public synchronized long getLamport() {
+        return lamport;
+    }
+
+    public synchronized int getPeerCount() {
+        return links.size();
+    }
+
+    // Deltas queued to peers, live and catch-up
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    // Deltas from peers taken in, duplicates not counted
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public synchronized long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    public synchronized int getPort() {
+        return server != null ? server.getLocalPort() : -1;
+    }
+
+    // Accepts peers on port (0 picks a free one); returns the bound port
+    public int listen(int port) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port));
+        synchronized (this) {
+            if (closed || server != null) {
+                socket.close();
+                throw new IOException(closed ? "Closed" : "Already listening");
+            }
+            server = socket;
+        }
+        startThread("PeerSync-accept", () -> accept(socket));
+        return socket.getLocalPort();
+    }
+
+    // Keeps a connection to host:port up, reconnecting with backoff, until
+    // disconnect() or close(). Connecting twice to the same address is a no-op.
+    // disconnect() only stops the reconnects, an open link lasts until it drops.
+    public synchronized void connect(String host, int port) {
+        String key = host + ":" + port;
+        if (closed || dialers.containsKey(key)) return;
+        dialers.put(key, startThread("PeerSync-dial " + key, () -> dial(host, port)));
+    }
+
+    public synchronized void disconnect(String host, int port) {
+        Thread dialer = dialers.remove(host + ":" + port);
+        if (dialer != null) dialer.interrupt();
+    }
+
+    @Override
+    public void close() {
+        List<Link> closing;
+        List<Thread> stopping;
+        ServerSocket socket;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            closing = new ArrayList<>(links);
+            stopping = new ArrayList<>(dialers.values());
+            dialers.clear();
+            socket = server;
+        }
+        closeQuietly(socket);
+        for (Thread t : stopping) t.interrupt();
+        for (Link link : closing) link.close();
+    }
+
+    // Records a change made on this device and sends it to every peer. deadline
+    // is on the engine clock and only used when state is running.
+    public synchronized SyncDelta publishLocal(int id, int ops, byte state, long deadline,
+                                               long remaining, long defaultMillis) {
+        long value = state == TimerStore.STATE_RUNNING
+                ? deadline - clock.now() + wallClock.now()
+                : remaining;
+        SyncDelta delta = new SyncDelta(origin, ++localSeq, ++lamport, id, ops, state, value, defaultMillis);
+        seen.put(origin, localSeq);
+        merge(delta);
+        append(delta);
+        broadcast(delta, null);
+        return delta;
+    }
+
+    // True while delta is still the winning state of its remote
+    public synchronized boolean isCurrent(SyncDelta delta) {
+        return delta.remoteId < registers.length && registers[delta.remoteId] == delta;
+    }
+
+    // Winning state of a remote, or null if no device has changed it yet
+    public synchronized SyncDelta getRegister(int id) {
+        return id > 0 && id < registers.length ? registers[id] : null;
+    }
+
+    // Deadline of a running delta on this device's engine clock
+    public long toLocalDeadline(SyncDelta delta) {
+        return delta.value - wallClock.now() + clock.now();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "origin=" + Long.toHexString(origin) + " lamport=" + lamport + " peers=" + links.size()
+                + " log=" + log.size() + " sent=" + sentCount + " received=" + receivedCount
+                + " snapshots=" + snapshotCount;
+    }
+
+    // ---- replication, all guarded by this ----
+
+    private boolean merge(SyncDelta delta) {
+        if (delta.remoteId >= registers.length) {
+            registers = Arrays.copyOf(registers, Math.max(delta.remoteId + 1, registers.length * 2));
+        }
+        if (!delta.supersedes(registers[delta.remoteId])) return false;
+        registers[delta.remoteId] = delta;
+        return true;
+    }
+
+    private void append(SyncDelta delta) {
+        log.addLast(delta);
+        if (log.size() > LOG_CAPACITY) {
+            SyncDelta old = log.removeFirst();
+            raise(evicted, old.origin, old.seq);
+        }
+    }
+
+    private void broadcast(SyncDelta delta, Link except) {
+        if (links.isEmpty()) return;
+        byte[] frame = encode(FRAME_DELTA, out -> delta.write(out));
+        for (Link link : links) {
+            if (link != except) {
+                link.send(frame);
+                sentCount++;
+            }
+        }
+    }
+
+    private void receive(SyncDelta delta, Link from) {
+        if (delta.origin == origin) return; // Our own change coming back around
+        long have = seen.getOrDefault(delta.origin, 0L);
+        if (delta.seq <= have) return;      // Already seen through another peer
+        // Only contiguous deltas advance the vector, so a gap is asked for again on reconnect;
+        // the ones past the gap are remembered so their second copy is dropped as well
+        if (delta.seq == have + 1) {
+            advance(delta.origin, delta.seq);
+        } else {
+            TreeSet<Long> early = ahead.get(delta.origin);
+            if (early == null) ahead.put(delta.origin, early = new TreeSet<>());
+            if (!early.add(delta.seq)) return;
+            // A gap that is never filled must not grow this forever; the oldest entry
+            // is also the first one a catch-up would resend
+            if (early.size() > LOG_CAPACITY) early.pollFirst();
+        }
+        lamport = Math.max(lamport, delta.lamport);
+        receivedCount++;
+        append(delta);
+        broadcast(delta, from);
+        if (merge(delta)) host.onDelta(delta);
+    }
+
+    private void receiveSnapshot(List<SyncDelta> deltas, Map<Long, Long> vector, Link from) {
+        for (SyncDelta delta : deltas) {
+            lamport = Math.max(lamport, delta.lamport);
+            if (merge(delta)) {
+                broadcast(delta, from);
+                host.onDelta(delta);
+            }
+        }
+        for (Map.Entry<Long, Long> e : vector.entrySet()) {
+            long o = e.getKey();
+            if (o == origin || e.getValue() <= seen.getOrDefault(o, 0L)) continue;
+            advance(o, e.getValue());
+            // Known through the snapshot but not in our log: peers this far behind need a snapshot from us too
+            raise(evicted, o, e.getValue());
+        }
+    }
+
+    // Queues what a peer with the given vector is missing
+    private void catchUp(Link link, Map<Long, Long> peerSeen) {
+        boolean snapshot = false;
+        for (Map.Entry<Long, Long> e : evicted.entrySet()) {
+            if (peerSeen.getOrDefault(e.getKey(), 0L) < e.getValue()) {
+                snapshot = true;
+                break;
+            }
+        }
+        if (snapshot) {
+            List<SyncDelta> state = new ArrayList<>();
+            for (SyncDelta delta : registers) {
+                if (delta != null) state.add(delta);
+            }
+            link.send(encode(FRAME_SNAPSHOT, out -> {
+                SyncDelta.writeVarLong(out, state.size());
+                for (SyncDelta delta : state) delta.write(out);
+                writeVector(out, seen);
+            }));
+            snapshotCount++;
+            return;
+        }
+        for (SyncDelta delta : log) {
+            if (delta.seq > peerSeen.getOrDefault(delta.origin, 0L)) {
+                link.send(encode(FRAME_DELTA, out -> delta.write(out)));
+                sentCount++;
+            }
+        }
+    }
+
+    // Moves origin's watermark up to seq and on over the seqs that already arrived past it
+    private void advance(long o, long seq) {
+        TreeSet<Long> early = ahead.get(o);
+        if (early != null) {
+            early.headSet(seq, true).clear();
+            while (early.remove(seq + 1)) seq++;
+            if (early.isEmpty()) ahead.remove(o);
+        }
+        seen.put(o, seq);
+    }
+
+    private static void raise(Map<Long, Long> map, long key, long value) {
+        Long old = map.get(key);
+        if (old == null || old < value) map.put(key, value);
+    }
+
+    // ---- network ----
+
+    private void accept(ServerSocket socket) {
+        while (true) {
+            Socket s;
+            try {
+                s = socket.accept();
+            } catch (IOException e) {
+                return; // Closed
+            }
+            startThread("PeerSync-link " + s.getRemoteSocketAddress(), () -> new Link(s).run());
+        }
+    }
+
+    private void dial(String host, int port) {
+        long backoff = RECONNECT_MIN_MS;
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (this) {
+                if (closed) return;
+            }
+            Socket s = new Socket();
+            try {
+                s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                if (new Link(s).run()) backoff = RECONNECT_MIN_MS;
+            } catch (IOException e) {
+                closeQuietly(s);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, RECONNECT_MAX_MS);
+        }
+    }
+
+    // One connected peer: the caller's thread reads, a second thread writes
+    private final class Link {
+        private final Socket socket;
+        private final LinkedBlockingQueue<byte[]> outbox = new LinkedBlockingQueue<>();
+        private volatile boolean dead;
+        private long peer; // Origin of the other side, set once joined
+
+        Link(Socket socket) {
+            this.socket = socket;
+        }
+
+        void send(byte[] frame) {
+            if (outbox.size() >= MAX_OUTBOX) {
+                close();
+                return;
+            }
+            outbox.offer(frame);
+        }
+
+        // Runs the connection until it drops; true if the handshake got through
+        boolean run() {
+            boolean joined = false;
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout((int) READ_TIMEOUT_MS);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                OutputStream out = socket.getOutputStream();
+                synchronized (PeerSync.this) {
+                    if (closed) return false;
+                    outbox.offer(encode(FRAME_HELLO, o -> {
+                        o.writeInt(MAGIC);
+                        o.writeByte(PROTOCOL);
+                        o.writeLong(origin);
+                        SyncDelta.writeVarLong(o, lamport);
+                        writeVector(o, seen);
+                    }));
+                }
+                startThread("PeerSync-write " + socket.getRemoteSocketAddress(), () -> write(out));
+
+                DataInput hello = readFrame(in, FRAME_HELLO);
+                if (hello.readInt() != MAGIC || hello.readUnsignedByte() != PROTOCOL) {
+                    throw new IOException("Not a peer or protocol mismatch");
+                }
+                long peer = hello.readLong();
+                long peerLamport = SyncDelta.readVarLong(hello);
+                Map<Long, Long> peerSeen = readVector(hello);
+                synchronized (PeerSync.this) {
+                    if (closed || peer == origin) return false;
+                    for (Link link : links) {
+                        // Both sides dialed each other; the older link stays
+                        if (link.peer == peer) return false;
+                    }
+                    this.peer = peer;
+                    lamport = Math.max(lamport, peerLamport);
+                    catchUp(this, peerSeen);
+                    links.add(this);
+                    joined = true;
+                    host.onPeersChanged(links.size());
+                }
+
+                while (!dead) {
+                    int type = in.readUnsignedByte();
+                    DataInput frame = readPayload(in);
+                    if (type == FRAME_DELTA) {
+                        SyncDelta delta = SyncDelta.read(frame);
+                        synchronized (PeerSync.this) {
+                            receive(delta, this);
+                        }
+                    } else if (type == FRAME_SNAPSHOT) {
+                        int count = (int) SyncDelta.readVarLong(frame);
+                        List<SyncDelta> deltas = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) deltas.add(SyncDelta.read(frame));
+                        Map<Long, Long> vector = readVector(frame);
+                        synchronized (PeerSync.this) {
+                            receiveSnapshot(deltas, vector, this);
+                        }
+                    } else if (type != FRAME_PING) {
+                        throw new IOException("Unexpected frame " + type);
+                    }
+                }
+            } catch (IOException e) {
+                // Dropped, timed out or garbled: the dialer (if any) reconnects and catches up
+            } finally {
+                close();
+                if (joined) {
+                    synchronized (PeerSync.this) {
+                        links.remove(this);
+                        host.onPeersChanged(links.size());
+                    }
+                }
+            }
+            return joined;
+        }
+
+        private void write(OutputStream socketOut) {
+            try {
+                OutputStream out = new BufferedOutputStream(socketOut);
+                while (!dead) {
+                    byte[] frame = outbox.poll(PING_MS, TimeUnit.MILLISECONDS);
+                    if (dead) break;
+                    out.write(frame != null ? frame : PING);
+                    if (outbox.isEmpty()) out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Reader notices the closed socket
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            dead = true;
+            outbox.offer(PING); // Wakes the writer
+            closeQuietly(socket);
+        }
+    }
+
+    // ---- framing ----
+
+    interface Payload {
+        void write(DataOutput out) throws IOException;
+    }
+
+    static byte[] encode(int type, Payload payload) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+            payload.write(new DataOutputStream(body));
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(body.size() + 4);
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeByte(type);
+            SyncDelta.writeVarLong(out, body.size());
+            body.writeTo(out);
+            return frame.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory streams do not fail
+        }
+    }
+
+    private static DataInput readFrame(DataInputStream in, int expectedType) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type != expectedType) throw new IOException("Expected frame " + expectedType + ", got " + type);
+        return readPayload(in);
+    }
+
+    private static DataInput readPayload(DataInputStream in) throws IOException {
+        long length = SyncDelta.readVarLong(in);
+        if (length < 0 || length > MAX_FRAME) throw new IOException("Frame too large: " + length);
+        byte[] body = new byte[(int) length];
+        in.readFully(body);
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    static void writeVector(DataOutput out, Map<Long, Long> vector) throws IOException {
+        SyncDelta.writeVarLong(out, vector.size());
+        for (Map.Entry<Long, Long> e : vector.entrySet()) {
+            out.writeLong(e.getKey());
+            SyncDelta.writeVarLong(out, e.getValue());
+        }
+    }
+
+    private static Map<Long, Long> readVector(DataInput in) throws IOException {
+        int count = (int) SyncDelta.readVarLong(in);
+        if (count > MAX_FRAME / 9) throw new IOException("Vector too large: " + count);
+        Map<Long, Long> vector = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            vector.put(in.readLong(), SyncDelta.readVarLong(in));
+        }
+        return vector;
+    }
+
+    private static Thread startThread(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
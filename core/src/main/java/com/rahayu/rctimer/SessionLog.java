@@ -0,0 +1,446 @@
+package com.rahayu.rctimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Log of finished rentals. Each session is a fixed 44 byte, CRC checked record
+// appended to sessions.log, so record n lives at offset n * RECORD_BYTES and the
+// file never has to be parsed front to back.
+//
+// Two indexes sit on top of it:
+//  - every record stores the ordinal of the previous session of the same remote,
+//    giving a per-remote chain that can be walked newest to oldest;
+//  - a rollup per local day keeps the record range of that day and, per remote,
+//    the session count, billed time, acknowledge delay sums and the last record.
+// Rollups are updated incrementally on append and saved to sessions.idx together
+// with the number of records they cover. Loading reads the index and only scans
+// the records appended after it was last saved.
+//
+// Not thread safe; TimerService drives it from a single IO thread.
+public class SessionLog {
+    public static final byte END_RESET = 0;   // Reset before or after it ran out
+    public static final byte END_ACK = 1;     // Alarm acknowledged with STOP_ALARM
+    public static final byte END_RESTART = 2; // Alarm ended by starting the next rental
+    public static final byte END_DROPPED = 3; // Remote removed from the fleet
+
+    static final int RECORD_BYTES = 44;
+    static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static final int INDEX_MAGIC = 0x52534958; // "RSIX"
+    private static final int INDEX_VERSION = 1;
+    // The index is rewritten after this many appends (and on close)
+    private static final int INDEX_SAVE_INTERVAL = 32;
+
+    // One closed rental, reused by forEachSession
+    public static final class Session {
+        public int ordinal;
+        public int remoteId;
+        public long startWall;
+        public long endWall;
+        public long billedMillis;
+        public int ackDelayMillis; // -1 when the session never alarmed
+        public int pauses;
+        public byte endReason;
+        int previous;
+    }
+
+    public interface Visitor {
+        void visit(Session session);
+    }
+
+    // Totals for one remote (or the whole fleet) over a day range
+    public static final class Summary {
+        public int sessions;
+        public long billedMillis;
+        public long ackSumMillis;
+        public int ackCount;
+        public int days;
+
+        public long getMeanAckMillis() {
+            return ackCount > 0 ? ackSumMillis / ackCount : 0;
+        }
+
+        // Share of the range the remotes spent rented out, 0..1
+        public double getUtilisation(int remotes) {
+            long capacity = days * DAY_MS * Math.max(1, remotes);
+            return capacity > 0 ? (double) billedMillis / capacity : 0;
+        }
+    }
+
+    // Per day rollup; remote ids are kept sorted so lookups are a binary search
+    static final class DayRollup {
+        final int day;
+        int firstRecord = Integer.MAX_VALUE;
+        int lastRecord = -1;
+        int used;
+        int[] remoteIds = new int[4];
+        int[] sessions = new int[4];
+        long[] billed = new long[4];
+        long[] ackSum = new long[4];
+        int[] ackCount = new int[4];
+        int[] lastOfRemote = new int[4];
+
+        DayRollup(int day) {
+            this.day = day;
+        }
+
+        int slot(int remoteId) {
+            return Arrays.binarySearch(remoteIds, 0, used, remoteId);
+        }
+
+        int slotForInsert(int remoteId) {
+            int slot = slot(remoteId);
+            if (slot >= 0) return slot;
+            slot = -slot - 1;
+            if (used == remoteIds.length) {
+                int cap = used * 2;
+                remoteIds = Arrays.copyOf(remoteIds, cap);
+                sessions = Arrays.copyOf(sessions, cap);
+                billed = Arrays.copyOf(billed, cap);
+                ackSum = Arrays.copyOf(ackSum, cap);
+                ackCount = Arrays.copyOf(ackCount, cap);
+                lastOfRemote = Arrays.copyOf(lastOfRemote, cap);
+            }
+            int tail = used - slot;
+            System.arraycopy(remoteIds, slot, remoteIds, slot + 1, tail);
+            System.arraycopy(sessions, slot, sessions, slot + 1, tail);
+            System.arraycopy(billed, slot, billed, slot + 1, tail);
+            System.arraycopy(ackSum, slot, ackSum, slot + 1, tail);
+            System.arraycopy(ackCount, slot, ackCount, slot + 1, tail);
+            System.arraycopy(lastOfRemote, slot, lastOfRemote, slot + 1, tail);
+            remoteIds[slot] = remoteId;
+            sessions[slot] = 0;
+            billed[slot] = 0;
+            ackSum[slot] = 0;
+            ackCount[slot] = 0;
+            lastOfRemote[slot] = -1;
+            used++;
+            return slot;
+        }
+
+        void add(int ordinal, int remoteId, long billedMillis, int ackDelay) {
+            int i = slotForInsert(remoteId);
+            sessions[i]++;
+            billed[i] += billedMillis;
+            if (ackDelay >= 0) {
+                ackSum[i] += ackDelay;
+                ackCount[i]++;
+            }
+            lastOfRemote[i] = Math.max(lastOfRemote[i], ordinal);
+            firstRecord = Math.min(firstRecord, ordinal);
+            lastRecord = Math.max(lastRecord, ordinal);
+        }
+    }
+
+    private final File logFile;
+    private final File indexFile;
+    private final File tempFile;
+    private final TimeZone zone;
+    private final NavigableMap<Integer, DayRollup> days = new TreeMap<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Session scratch = new Session();
+
+    // Newest record of each remote, the head of its chain (index = remote id, -1 = none)
+    private int[] lastByRemote = new int[0];
+    private int recordCount;
+    private int unsavedAppends;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    public SessionLog(File dir, TimeZone zone) {
+        this.logFile = new File(dir, "sessions.log");
+        this.indexFile = new File(dir, "sessions.idx");
+        this.tempFile = new File(dir, "sessions.idx.tmp");
+        this.zone = zone;
+    }
+
+    // Loads the saved rollups and catches up on records appended after them.
+    // A torn record at the tail is cut off. Returns the number of records scanned.
+    public int open() throws IOException {
+        raf = new RandomAccessFile(logFile, "rw");
+        channel = raf.getChannel();
+
+        int covered = loadIndex();
+        int onDisk = (int) (channel.size() / RECORD_BYTES);
+        if (covered > onDisk) {
+            // Index is ahead of the log (log lost or replaced), start over
+            days.clear();
+            lastByRemote = new int[0];
+            covered = 0;
+        }
+
+        recordCount = covered;
+        int scanned = 0;
+        for (int n = covered; n < onDisk; n++) {
+            if (!read(n, scratch)) break;
+            index(scratch);
+            recordCount = n + 1;
+            scanned++;
+        }
+        if (channel.size() != (long) recordCount * RECORD_BYTES) {
+            channel.truncate((long) recordCount * RECORD_BYTES);
+        }
+        if (scanned > 0) saveIndex();
+        return scanned;
+    }
+
+    public void close() throws IOException {
+        if (raf == null) return;
+        if (unsavedAppends > 0) saveIndex();
+        raf.close();
+        raf = null;
+        channel = null;
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    // Appends one closed rental, fsyncs it and folds it into the rollups.
+    // Fails with an IOException if open() did not succeed.
+    public void append(int remoteId, long startWall, long endWall, long billedMillis,
+                       int ackDelayMillis, int pauses, byte endReason) throws IOException {
+        checkOpen();
+        Session s = scratch;
+        s.ordinal = recordCount;
+        s.remoteId = remoteId;
+        s.previous = remoteId < lastByRemote.length ? lastByRemote[remoteId] : -1;
+        s.startWall = startWall;
+        s.endWall = endWall;
+        s.billedMillis = billedMillis;
+        s.ackDelayMillis = ackDelayMillis;
+        s.pauses = Math.min(pauses, 0xFFFF);
+        s.endReason = endReason;
+
+        encode(s);
+        long position = (long) s.ordinal * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        channel.force(false);
+        recordCount++;
+        index(s);
+
+        if (++unsavedAppends >= INDEX_SAVE_INTERVAL) saveIndex();
+    }
+
+    // Local calendar day (days since the epoch) of a wall clock time
+    public int dayOf(long wallMillis) {
+        return (int) Math.floorDiv(wallMillis + zone.getOffset(wallMillis), DAY_MS);
+    }
+
+    // Totals over [fromDay, toDay] from the rollups alone; remoteId 0 sums the fleet.
+    // All zero while the log is not open, so the daily report still has something to show.
+    public Summary summarize(int fromDay, int toDay, int remoteId) {
+        Summary summary = new Summary();
+        summary.days = Math.max(0, toDay - fromDay + 1);
+        if (channel == null) return summary;
+        for (DayRollup r : days.subMap(fromDay, true, toDay, true).values()) {
+            if (remoteId > 0) {
+                int i = r.slot(remoteId);
+                if (i >= 0) addTo(summary, r, i);
+            } else {
+                for (int i = 0; i < r.used; i++) addTo(summary, r, i);
+            }
+        }
+        return summary;
+    }
+
+    // Visits the sessions of [fromDay, toDay], newest first for a single remote and
+    // in log order for the fleet (remoteId 0). The Session passed in is reused.
+    public void forEachSession(int fromDay, int toDay, int remoteId, Visitor visitor) throws IOException {
+        checkOpen();
+        NavigableMap<Integer, DayRollup> range = days.subMap(fromDay, true, toDay, true);
+        if (range.isEmpty()) return;
+
+        if (remoteId > 0) {
+            // Start from the newest session of this remote in range and follow its chain
+            int next = -1;
+            for (DayRollup r : range.descendingMap().values()) {
+                int i = r.slot(remoteId);
+                if (i >= 0) next = Math.max(next, r.lastOfRemote[i]);
+            }
+            while (next >= 0 && read(next, scratch)) {
+                int day = dayOf(scratch.endWall);
+                if (day < fromDay) break;
+                next = scratch.previous;
+                if (day <= toDay) visitor.visit(scratch);
+            }
+            return;
+        }
+
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (DayRollup r : range.values()) {
+            first = Math.min(first, r.firstRecord);
+            last = Math.max(last, r.lastRecord);
+        }
+        for (int n = first; n <= last; n++) {
+            if (!read(n, scratch)) break;
+            int day = dayOf(scratch.endWall);
+            if (day >= fromDay && day <= toDay) visitor.visit(scratch);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (channel == null) throw new IOException("Session log not open");
+    }
+
+    private static void addTo(Summary summary, DayRollup r, int i) {
+        summary.sessions += r.sessions[i];
+        summary.billedMillis += r.billed[i];
+        summary.ackSumMillis += r.ackSum[i];
+        summary.ackCount += r.ackCount[i];
+    }
+
+    private void index(Session s) {
+        int day = dayOf(s.endWall);
+        DayRollup rollup = days.get(day);
+        if (rollup == null) {
+            rollup = new DayRollup(day);
+            days.put(day, rollup);
+        }
+        rollup.add(s.ordinal, s.remoteId, s.billedMillis, s.ackDelayMillis);
+
+        if (s.remoteId >= lastByRemote.length) {
+            int old = lastByRemote.length;
+            lastByRemote = Arrays.copyOf(lastByRemote, Math.max(s.remoteId + 1, old * 2));
+            Arrays.fill(lastByRemote, old, lastByRemote.length, -1);
+        }
+        lastByRemote[s.remoteId] = s.ordinal;
+    }
+
+    // --- Records ---
+
+    private void encode(Session s) {
+        record.clear();
+        record.putInt(s.remoteId).putInt(s.previous)
+                .putLong(s.startWall).putLong(s.endWall).putLong(s.billedMillis)
+                .putInt(s.ackDelayMillis).putShort((short) s.pauses).put(s.endReason).put((byte) 0);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_BYTES - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+    }
+
+    private boolean read(int ordinal, Session out) throws IOException {
+        record.clear();
+        long position = (long) ordinal * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            if (channel.read(record, position + record.position()) < 0) return false;
+        }
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_BYTES - 4);
+        record.flip();
+        if (record.getInt(RECORD_BYTES - 4) != (int) crc.getValue()) return false;
+
+        out.ordinal = ordinal;
+        out.remoteId = record.getInt();
+        out.previous = record.getInt();
+        out.startWall = record.getLong();
+        out.endWall = record.getLong();
+        out.billedMillis = record.getLong();
+        out.ackDelayMillis = record.getInt();
+        out.pauses = record.getShort() & 0xFFFF;
+        out.endReason = record.get();
+        return out.remoteId > 0;
+    }
+
+    // --- Rollup index ---
+
+    private int loadIndex() {
+        if (!indexFile.exists()) return 0;
+        try (RandomAccessFile in = new RandomAccessFile(indexFile, "r")) {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            if (data.length < 16) return 0;
+            int stored = buf.getInt(data.length - 4);
+            crc.reset();
+            crc.update(data, 0, data.length - 4);
+            if (stored != (int) crc.getValue() || buf.getInt() != INDEX_MAGIC || buf.getInt() != INDEX_VERSION) {
+                return 0;
+            }
+
+            int covered = buf.getInt();
+            int remotes = buf.getInt();
+            lastByRemote = new int[remotes];
+            for (int i = 0; i < remotes; i++) lastByRemote[i] = buf.getInt();
+
+            int dayCount = buf.getInt();
+            for (int d = 0; d < dayCount; d++) {
+                DayRollup r = new DayRollup(buf.getInt());
+                r.firstRecord = buf.getInt();
+                r.lastRecord = buf.getInt();
+                int used = buf.getInt();
+                int cap = Math.max(4, used);
+                r.remoteIds = new int[cap];
+                r.sessions = new int[cap];
+                r.billed = new long[cap];
+                r.ackSum = new long[cap];
+                r.ackCount = new int[cap];
+                r.lastOfRemote = new int[cap];
+                for (int i = 0; i < used; i++) {
+                    r.remoteIds[i] = buf.getInt();
+                    r.sessions[i] = buf.getInt();
+                    r.billed[i] = buf.getLong();
+                    r.ackSum[i] = buf.getLong();
+                    r.ackCount[i] = buf.getInt();
+                    r.lastOfRemote[i] = buf.getInt();
+                }
+                r.used = used;
+                days.put(r.day, r);
+            }
+            return covered;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable index, rebuild it from the log
+            days.clear();
+            lastByRemote = new int[0];
+            return 0;
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        int bytes = 4 * 5 + 4 * lastByRemote.length + 4;
+        for (DayRollup r : days.values()) bytes += 16 + r.used * 32;
+
+        ByteBuffer out = ByteBuffer.allocate(bytes);
+        out.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(recordCount).putInt(lastByRemote.length);
+        for (int last : lastByRemote) out.putInt(last);
+        out.putInt(days.size());
+        for (Map.Entry<Integer, DayRollup> e : days.entrySet()) {
+            DayRollup r = e.getValue();
+            out.putInt(r.day).putInt(r.firstRecord).putInt(r.lastRecord).putInt(r.used);
+            for (int i = 0; i < r.used; i++) {
+                out.putInt(r.remoteIds[i]).putInt(r.sessions[i]).putLong(r.billed[i])
+                        .putLong(r.ackSum[i]).putInt(r.ackCount[i]).putInt(r.lastOfRemote[i]);
+            }
+        }
+        crc.reset();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+
+        // The log is already durable, so a crash here only means a longer catch-up scan
+        try (RandomAccessFile tmp = new RandomAccessFile(tempFile, "rw")) {
+            tmp.setLength(0);
+            FileChannel ch = tmp.getChannel();
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(false);
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException("Cannot replace " + indexFile);
+        }
+        unsavedAppends = 0;
+    }
+}
@@ -0,0 +1,128 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Turns timer commands into rental sessions. A session opens on the first START,
+// accumulates billed time across pauses, and closes on RESET, on the alarm being
+// acknowledged, or when the next rental is started straight from the alarm.
+// Closed sessions are handed to a Sink (TimerService appends them to the
+// SessionLog on its IO thread).
+//
+// Bookkeeping is primitive arrays indexed by remote id, driven from the service
+// thread only. Billed time uses the monotonic clock; the wall clock only stamps
+// the start and end of a session.
+public class SessionRecorder {
+
+    public interface Sink {
+        void onSessionClosed(int remoteId, long startWall, long endWall, long billedMillis,
+                             int ackDelayMillis, int pauses, byte endReason);
+    }
+
+    private static final byte PHASE_NONE = 0;
+    private static final byte PHASE_RUNNING = 1;
+    private static final byte PHASE_PAUSED = 2;
+    private static final byte PHASE_ALARMING = 3;
+
+    private final Clock clock;
+    private final Clock wallClock;
+    private final Sink sink;
+
+    private byte[] phase = new byte[0];
+    private long[] startWall = new long[0];
+    private long[] runStart = new long[0];
+    private long[] billed = new long[0];
+    private long[] alarmAt = new long[0];
+    private int[] pauses = new int[0];
+
+    public SessionRecorder(Clock clock, Clock wallClock, Sink sink, int size) {
+        this.clock = clock;
+        this.wallClock = wallClock;
+        this.sink = sink;
+        resize(size);
+    }
+
+    public void resize(int size) {
+        // Sessions of dropped remotes end here
+        for (int id = size + 1; id <= phase.length; id++) {
+            close(id, SessionLog.END_DROPPED);
+        }
+        phase = Arrays.copyOf(phase, size);
+        startWall = Arrays.copyOf(startWall, size);
+        runStart = Arrays.copyOf(runStart, size);
+        billed = Arrays.copyOf(billed, size);
+        alarmAt = Arrays.copyOf(alarmAt, size);
+        pauses = Arrays.copyOf(pauses, size);
+    }
+
+    // Picks up remotes restored from the journal. Time before the restart is not
+    // billed because it cannot be known; the session starts now.
+    public void resume(TimerSnapshot snapshot) {
+        long now = clock.now();
+        for (int id = 1; id <= Math.min(snapshot.size(), phase.length); id++) {
+            int i = id - 1;
+            if (phase[i] != PHASE_NONE) continue;
+            if (snapshot.isRunning(id)) {
+                open(i, now);
+            } else if (snapshot.isAlarming(id)) {
+                open(i, now);
+                phase[i] = PHASE_ALARMING;
+                alarmAt[i] = now;
+            }
+        }
+    }
+
+    public void onStart(int id) {
+        int i = id - 1;
+        long now = clock.now();
+        if (phase[i] == PHASE_ALARMING) close(id, SessionLog.END_RESTART);
+        if (phase[i] == PHASE_NONE) {
+            open(i, now);
+        } else if (phase[i] == PHASE_PAUSED) {
+            phase[i] = PHASE_RUNNING;
+            runStart[i] = now;
+        }
+    }
+
+    public void onPause(int id) {
+        int i = id - 1;
+        if (phase[i] != PHASE_RUNNING) return;
+        billed[i] += clock.now() - runStart[i];
+        pauses[i]++;
+        phase[i] = PHASE_PAUSED;
+    }
+
+    // The engine expired this remote at its deadline (possibly a moment ago)
+    public void onExpired(int id, long deadline) {
+        int i = id - 1;
+        if (phase[i] != PHASE_RUNNING) return;
+        billed[i] += Math.max(0, deadline - runStart[i]);
+        alarmAt[i] = deadline;
+        phase[i] = PHASE_ALARMING;
+    }
+
+    public void onStopAlarm(int id) {
+        if (phase[id - 1] == PHASE_ALARMING) close(id, SessionLog.END_ACK);
+    }
+
+    public void onReset(int id) {
+        close(id, SessionLog.END_RESET);
+    }
+
+    private void open(int i, long now) {
+        phase[i] = PHASE_RUNNING;
+        startWall[i] = wallClock.now();
+        runStart[i] = now;
+        billed[i] = 0;
+        pauses[i] = 0;
+    }
+
+    private void close(int id, byte reason) {
+        int i = id - 1;
+        if (phase[i] == PHASE_NONE) return;
+        long now = clock.now();
+        if (phase[i] == PHASE_RUNNING) billed[i] += now - runStart[i];
+        int ackDelay = phase[i] == PHASE_ALARMING ? (int) Math.min(Integer.MAX_VALUE, now - alarmAt[i]) : -1;
+        phase[i] = PHASE_NONE;
+        sink.onSessionClosed(id, startWall[i], wallClock.now(), billed[i], ackDelay, pauses[i], reason);
+    }
+}
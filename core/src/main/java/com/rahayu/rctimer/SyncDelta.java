@@ -0,0 +1,98 @@
+package com.rahayu.rctimer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// One state transition of one remote as it travels between devices: the state
+// the remote ended up in after a start/pause/reset/..., never a tick. Running
+// remotes carry their deadline in wall clock millis (elapsedRealtime differs per
+// device), stopped ones their banked remaining time, so a peer can count down
+// on its own.
+//
+// Versioned by (lamport, origin): a higher Lamport clock wins, equal clocks are
+// broken by the larger origin id, so every device settles on the same state no
+// matter in which order deltas arrive. (origin, seq) identifies the delta for
+// de-duplication and catch-up.
+public final class SyncDelta {
+    public final long origin;     // Device run that made the change
+    public final long seq;        // 1, 2, 3... per origin
+    public final long lamport;
+    public final int remoteId;
+    public final int ops;         // CommandBus.OP_* applied, drives session bookkeeping
+    public final byte state;      // TimerStore.STATE_*
+    public final long value;      // Wall clock deadline when running, otherwise remaining millis
+    public final long defaultMillis;
+
+    public SyncDelta(long origin, long seq, long lamport, int remoteId, int ops,
+                     byte state, long value, long defaultMillis) {
+        this.origin = origin;
+        this.seq = seq;
+        this.lamport = lamport;
+        this.remoteId = remoteId;
+        this.ops = ops;
+        this.state = state;
+        this.value = value;
+        this.defaultMillis = defaultMillis;
+    }
+
+    // True if this delta wins over other (null counts as nothing known yet)
+    public boolean supersedes(SyncDelta other) {
+        if (other == null) return true;
+        if (lamport != other.lamport) return lamport > other.lamport;
+        if (origin != other.origin) return origin > other.origin;
+        return seq > other.seq;
+    }
+
+    // Origin is random so it stays fixed width, the rest are small varints:
+    // about 20 bytes per delta
+    void write(DataOutput out) throws IOException {
+        out.writeLong(origin);
+        writeVarLong(out, seq);
+        writeVarLong(out, lamport);
+        writeVarLong(out, remoteId);
+        writeVarLong(out, ops);
+        out.writeByte(state);
+        writeVarLong(out, value);
+        writeVarLong(out, defaultMillis);
+    }
+
+    static SyncDelta read(DataInput in) throws IOException {
+        long origin = in.readLong();
+        long seq = readVarLong(in);
+        long lamport = readVarLong(in);
+        int remoteId = (int) readVarLong(in);
+        int ops = (int) readVarLong(in);
+        byte state = in.readByte();
+        long value = readVarLong(in);
+        long defaultMillis = readVarLong(in);
+        if (seq <= 0 || remoteId <= 0 || state < TimerStore.STATE_IDLE || state > TimerStore.STATE_ALARMING) {
+            throw new IOException("Corrupt delta " + origin + "/" + seq);
+        }
+        return new SyncDelta(origin, seq, lamport, remoteId, ops, state, value, defaultMillis);
+    }
+
+    // Unsigned LEB128, values here are never negative
+    static void writeVarLong(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Varint too long");
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(origin) + "/" + seq + "@" + lamport + " #" + remoteId + " state=" + state;
+    }
+}
@@ -0,0 +1,61 @@
+package com.rahayu.rctimer;
+
+// Allocation-free countdown text. Writes whole seconds as "mm:ss", or "hh:mm:ss"
+// for rentals of an hour or more, into a caller-owned char buffer using a
+// precomputed two-digit table instead of String.format.
+//
+// Seconds are rounded up, like any countdown: 00:01 lasts until the deadline and
+// 00:00 only shows once it has passed, when the alarm goes off.
+public final class TimeFormat {
+    public static final int MAX_LENGTH = 8; // "99:59:59"
+    public static final long MAX_MILLIS = (99 * 3600 + 59 * 60 + 59) * 1000L;
+
+    private static final char[] TENS = new char[100];
+    private static final char[] ONES = new char[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            TENS[i] = (char) ('0' + i / 10);
+            ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
+    private TimeFormat() {
+    }
+
+    // Returns the number of chars written to out (which needs MAX_LENGTH room)
+    public static int format(long millis, char[] out) {
+        int totalSeconds = (int) displaySeconds(millis);
+        int hours = totalSeconds / 3600;
+        int minutes = (totalSeconds / 60) % 60;
+        int seconds = totalSeconds % 60;
+
+        int pos = 0;
+        if (hours > 0) {
+            pos = putTwoDigits(hours, out, pos);
+            out[pos++] = ':';
+        }
+        pos = putTwoDigits(minutes, out, pos);
+        out[pos++] = ':';
+        return putTwoDigits(seconds, out, pos);
+    }
+
+    // Whole seconds actually shown for millis, handy to skip redundant setText calls
+    public static long displaySeconds(long millis) {
+        return (Math.max(0, Math.min(MAX_MILLIS, millis)) + 999) / 1000;
+    }
+
+    // Millis until the shown second changes for a countdown with millis left,
+    // landing exactly on the boundary; 0 once nothing is left to count down
+    public static long nextChangeDelay(long millis) {
+        if (millis <= 0) return 0;
+        long partial = millis % 1000;
+        return partial == 0 ? Math.min(millis, 1000) : partial;
+    }
+
+    private static int putTwoDigits(int value, char[] out, int pos) {
+        out[pos] = TENS[value];
+        out[pos + 1] = ONES[value];
+        return pos + 2;
+    }
+}
@@ -0,0 +1,166 @@
+package com.rahayu.rctimer;
+
+import java.util.function.IntConsumer;
+
+// Deadline based countdown core. Ticks only check expiry, the remaining time of
+// every remote is computed from its deadline when read, so late or skipped ticks
+// never make a timer run slow. Running deadlines are indexed in a min-heap, so a
+// tick only touches the remotes that actually expire.
+//
+// Every public operation publishes at most one new TimerSnapshot, so readers on
+// other threads see each command (or each batch of expirations) atomically.
+// batch() widens that to several operations.
+public class TimerEngine {
+    // Longest sleep while something is running, so housekeeping that looks ahead
+    // of the deadlines (audio prewarm) still gets to run in time
+    public static final long MAX_TICK_INTERVAL_MS = 30000;
+
+    public interface Listener {
+        void onExpired(int remoteId);
+    }
+
+    private final Clock clock;
+    private final TimerStore store;
+    private final DeadlineHeap deadlines;
+    private Listener listener;
+    private int batchDepth;
+
+    public TimerEngine(Clock clock, TimerStore store) {
+        this.clock = clock;
+        this.store = store;
+        this.deadlines = new DeadlineHeap(store.size());
+        for (int id = 1; id <= store.size(); id++) {
+            if (store.isRunning(id)) deadlines.set(id, store.getDeadline(id));
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public long now() {
+        return clock.now();
+    }
+
+    public TimerStore getStore() {
+        return store;
+    }
+
+    public TimerSnapshot snapshot() {
+        return store.snapshot();
+    }
+
+    public synchronized void start(int id) {
+        store.stopAlarm(id);
+        store.start(id, clock.now());
+        deadlines.set(id, store.getDeadline(id));
+        publish();
+    }
+
+    public synchronized void pause(int id) {
+        store.pause(id, clock.now());
+        deadlines.remove(id);
+        publish();
+    }
+
+    public synchronized void reset(int id) {
+        store.reset(id);
+        deadlines.remove(id);
+        publish();
+    }
+
+    public synchronized void stopAlarm(int id) {
+        store.stopAlarm(id);
+        publish();
+    }
+
+    public synchronized void setDefaultTime(int id, long millis) {
+        store.setDefaultDuration(id, millis, clock.now());
+        if (store.isRunning(id)) deadlines.set(id, store.getDeadline(id));
+        publish();
+    }
+
+    public synchronized void extend(int id, long millis) {
+        store.extend(id, millis);
+        if (store.isRunning(id)) deadlines.set(id, store.getDeadline(id));
+        publish();
+    }
+
+    // Overwrites one remote wholesale with state decided elsewhere (a peer device)
+    public synchronized void restore(int id, byte state, long deadline, long remaining, long defaultMillis) {
+        store.restore(id, state, deadline, remaining, defaultMillis);
+        if (state == TimerStore.STATE_RUNNING) {
+            deadlines.set(id, deadline);
+        } else {
+            deadlines.remove(id);
+        }
+        publish();
+    }
+
+    public synchronized void setFleetSize(int size) {
+        for (int id = size + 1; id <= store.size(); id++) {
+            deadlines.remove(id);
+        }
+        store.resize(size);
+        deadlines.ensureCapacity(store.size());
+        publish();
+    }
+
+    // Runs several operations as one step: readers see a single new snapshot afterwards
+    public synchronized void batch(Runnable operations) {
+        batchDepth++;
+        try {
+            operations.run();
+        } finally {
+            batchDepth--;
+            publish();
+        }
+    }
+
+    private void publish() {
+        if (batchDepth == 0) store.publish();
+    }
+
+    public synchronized boolean isAnyRunning() {
+        return !deadlines.isEmpty();
+    }
+
+    // Visits every running remote id (unordered) without allocating
+    public synchronized void forEachRunning(IntConsumer action) {
+        for (int i = 0, n = deadlines.size(); i < n; i++) {
+            action.accept(deadlines.idAt(i));
+        }
+    }
+
+    // Visits running remotes whose deadline falls at or before limit
+    public synchronized void forEachDeadlineUntil(long limit, IntConsumer action) {
+        deadlines.forEachUntil(limit, action);
+    }
+
+    // Earliest deadline across running remotes, or -1 when nothing is running
+    public synchronized long nextDeadline() {
+        return deadlines.peekDeadline();
+    }
+
+    // Milliseconds until the next tick is needed, or -1 when nothing is running
+    // and the tick loop can park. Displays count down on their own, so ticks only
+    // have to land on the earliest deadline (capped at MAX_TICK_INTERVAL_MS).
+    public synchronized long nextTickDelay() {
+        if (deadlines.isEmpty()) return -1;
+        long left = Math.max(0, deadlines.peekDeadline() - clock.now());
+        return Math.min(left, MAX_TICK_INTERVAL_MS);
+    }
+
+    // Expires every running remote whose deadline has passed, in deadline order.
+    // Returns true if any remote is still running afterwards.
+    public synchronized boolean tick() {
+        long now = clock.now();
+        while (!deadlines.isEmpty() && deadlines.peekDeadline() <= now) {
+            int id = deadlines.poll();
+            store.expire(id);
+            if (listener != null) listener.onExpired(id);
+        }
+        publish(); // No-op unless something expired
+        return !deadlines.isEmpty();
+    }
+}
@@ -0,0 +1,420 @@
+package com.rahayu.rctimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+// Append-only binary journal of timer state, so a killed or restarted service
+// comes back with its rentals still counting down.
+//
+// File layout: a 24 byte header (magic, version, boot epoch, creation time)
+// followed by CRC framed records [i32 length][i32 crc32][payload]. Each remote
+// record is a full image of one row (state, deadline or banked time, default
+// duration), so replay is idempotent and the last record of a remote wins.
+//
+// Callers append on their own thread; encoding is a few dozen bytes into a
+// buffer. A background writer batches whatever arrived within FLUSH_DELAY_MS
+// into one write + fsync, and once the file has grown enough it compacts it
+// by writing the current image to a temp file and renaming it over the journal.
+//
+// Recovery stops at the first frame with a bad length or checksum, so a torn
+// write at the tail (power loss mid-append) only costs the records after it.
+public class TimerJournal {
+    private static final int MAGIC = 0x524A4E4C; // "RJNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private static final byte TYPE_FLEET = 1;
+    private static final byte TYPE_REMOTE = 2;
+    private static final int FLEET_PAYLOAD = 1 + 4;
+    private static final int REMOTE_PAYLOAD = 1 + 4 + 1 + 8 + 8;
+    private static final int FRAME_OVERHEAD = 8;
+
+    // At most this much work is lost when the process dies
+    static final long FLUSH_DELAY_MS = 200;
+    // The journal is compacted once records since the last snapshot exceed this (or the snapshot size)
+    static final long COMPACT_MIN_BYTES = 64 * 1024;
+    // Boot epochs further apart than this mean the device rebooted in between
+    static final long REBOOT_TOLERANCE_MS = 10 * 1000L;
+
+    private final File file;
+    private final File tempFile;
+    private final TimerStore store;
+    private final Clock elapsedClock;
+    private final Clock wallClock;
+    private final CRC32 appendCrc = new CRC32();
+
+    // Image of what the journal holds, updated with every append (guarded by this)
+    private int size;
+    private byte[] state = new byte[0];
+    private long[] value = new long[0];
+    private long[] defaultDuration = new long[0];
+
+    // Records waiting for the writer (guarded by this)
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer writing = ByteBuffer.allocate(4096);
+    private boolean compactRequested;
+    private boolean closing;
+
+    // Writer thread state
+    private Thread writer;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long bytesSinceCompaction;
+    private long snapshotBytes;
+    private volatile IOException failure;
+
+    // Stats
+    private volatile long syncs;
+    private volatile long compactions;
+    private long recoveredRecords;
+    private long discardedBytes;
+    private long recoveryNanos;
+
+    public TimerJournal(File file, TimerStore store, Clock elapsedClock, Clock wallClock) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.store = store;
+        this.elapsedClock = elapsedClock;
+        this.wallClock = wallClock;
+    }
+
+    // Replays the journal into the store and starts the writer. Must be called once,
+    // before the first record. Returns the number of records applied.
+    public int recover() throws IOException {
+        long started = System.nanoTime();
+        int applied = 0;
+        try {
+            applied = replay(readFile());
+        } finally {
+            recoveredRecords = applied;
+            recoveryNanos = System.nanoTime() - started;
+            synchronized (this) {
+                loadImageFromStore();
+                // The first thing the writer does is rewrite the file under the current boot epoch
+                compactRequested = true;
+            }
+            writer = new Thread(this::runWriter, "TimerJournal");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        return applied;
+    }
+
+    // Journals the current state of one remote, read from the store
+    public void record(int id) {
+        if (failure != null) return;
+        byte s;
+        long v;
+        long d;
+        synchronized (store) {
+            if (!store.contains(id)) return;
+            s = store.getState(id);
+            v = s == TimerStore.STATE_RUNNING ? store.getDeadline(id) : store.getRemaining(id, 0);
+            d = store.getDefaultDuration(id);
+        }
+        synchronized (this) {
+            if (id > size) return;
+            state[id - 1] = s;
+            value[id - 1] = v;
+            defaultDuration[id - 1] = d;
+            appendRemote(id, s, v, d);
+            notifyAll();
+        }
+    }
+
+    // Journals a fleet resize, plus the fresh rows of any remotes it added
+    public void recordFleetSize() {
+        if (failure != null) return;
+        int oldSize;
+        int newSize;
+        synchronized (this) {
+            oldSize = size;
+            newSize = store.size();
+            resizeImage(newSize);
+            appendFleet(newSize);
+            notifyAll();
+        }
+        for (int id = oldSize + 1; id <= newSize; id++) {
+            record(id);
+        }
+    }
+
+    // Flushes outstanding records, fsyncs and stops the writer
+    public void close() {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        Thread t = writer;
+        if (t == null) return;
+        try {
+            t.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public long getSyncCount() {
+        return syncs;
+    }
+
+    public long getCompactionCount() {
+        return compactions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "recovered=%d records in %.2fms, discarded=%dB, syncs=%d, compactions=%d%s",
+                recoveredRecords, recoveryNanos / 1e6, discardedBytes, syncs, compactions,
+                failure != null ? ", failed: " + failure.getMessage() : "");
+    }
+
+    // --- Recovery ---
+
+    private byte[] readFile() throws IOException {
+        if (!file.exists()) return null;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length > Integer.MAX_VALUE) throw new IOException("Journal too large: " + length);
+            byte[] data = new byte[(int) length];
+            in.readFully(data);
+            return data;
+        }
+    }
+
+    private int replay(byte[] data) {
+        if (data == null) return 0;
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (data.length < HEADER_BYTES || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            discardedBytes = data.length;
+            return 0;
+        }
+        long oldEpoch = in.getLong();
+        long createdAt = in.getLong();
+
+        // Running deadlines are elapsed-realtime values, which restart from zero on boot.
+        // After a reboot they are carried over through the wall clock instead.
+        long now = elapsedClock.now();
+        long epoch = wallClock.now() - now;
+        boolean rebooted = now < createdAt || Math.abs(epoch - oldEpoch) > REBOOT_TOLERANCE_MS;
+        long shift = rebooted ? oldEpoch - epoch : 0;
+
+        CRC32 crc = new CRC32();
+        int applied = 0;
+        while (in.remaining() >= FRAME_OVERHEAD) {
+            int start = in.position();
+            int length = in.getInt();
+            int expectedCrc = in.getInt();
+            if (length < 1 || length > in.remaining()) {
+                in.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(data, in.position(), length);
+            if ((int) crc.getValue() != expectedCrc || !apply(in, length, shift)) {
+                in.position(start);
+                break;
+            }
+            applied++;
+        }
+        discardedBytes = in.remaining();
+        store.publish();
+        return applied;
+    }
+
+    private boolean apply(ByteBuffer in, int length, long shift) {
+        byte type = in.get();
+        if (type == TYPE_FLEET && length == FLEET_PAYLOAD) {
+            store.resize(in.getInt());
+            return true;
+        }
+        if (type == TYPE_REMOTE && length == REMOTE_PAYLOAD) {
+            int id = in.getInt();
+            byte s = in.get();
+            long v = in.getLong();
+            long d = in.getLong();
+            if (s < TimerStore.STATE_IDLE || s > TimerStore.STATE_ALARMING) return false;
+            if (store.contains(id)) {
+                if (s == TimerStore.STATE_RUNNING) {
+                    store.restore(id, s, v + shift, 0, d);
+                } else {
+                    store.restore(id, s, 0, v, d);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Called with this held
+    private void loadImageFromStore() {
+        TimerSnapshot snapshot = store.publish();
+        resizeImage(snapshot.size());
+        for (int id = 1; id <= size; id++) {
+            byte s = snapshot.getState(id);
+            state[id - 1] = s;
+            value[id - 1] = s == TimerStore.STATE_RUNNING ? snapshot.getDeadline(id) : snapshot.getRemaining(id, 0);
+            defaultDuration[id - 1] = snapshot.getDefaultDuration(id);
+        }
+    }
+
+    // --- Appending (called with this held) ---
+
+    private void resizeImage(int newSize) {
+        state = Arrays.copyOf(state, newSize);
+        value = Arrays.copyOf(value, newSize);
+        defaultDuration = Arrays.copyOf(defaultDuration, newSize);
+        size = newSize;
+    }
+
+    private void appendFleet(int fleetSize) {
+        ByteBuffer out = reserve(FLEET_PAYLOAD);
+        int start = out.position();
+        out.put(TYPE_FLEET).putInt(fleetSize);
+        seal(out, start, FLEET_PAYLOAD);
+    }
+
+    private void appendRemote(int id, byte s, long v, long d) {
+        ByteBuffer out = reserve(REMOTE_PAYLOAD);
+        int start = out.position();
+        out.put(TYPE_REMOTE).putInt(id).put(s).putLong(v).putLong(d);
+        seal(out, start, REMOTE_PAYLOAD);
+    }
+
+    // Leaves room for the frame header and returns the buffer positioned at the payload
+    private ByteBuffer reserve(int payload) {
+        if (pending.remaining() < FRAME_OVERHEAD + payload) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + FRAME_OVERHEAD + payload));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.position(pending.position() + FRAME_OVERHEAD);
+        return pending;
+    }
+
+    private void seal(ByteBuffer out, int payloadStart, int payload) {
+        appendCrc.reset();
+        appendCrc.update(out.array(), payloadStart, payload);
+        out.putInt(payloadStart - FRAME_OVERHEAD, payload);
+        out.putInt(payloadStart - 4, (int) appendCrc.getValue());
+    }
+
+    // --- Writer thread ---
+
+    private void runWriter() {
+        try {
+            while (true) {
+                boolean compact;
+                boolean last;
+                synchronized (this) {
+                    while (pending.position() == 0 && !compactRequested && !closing) {
+                        wait();
+                    }
+                    // Batch everything that arrives shortly after the first record into one fsync
+                    long flushAt = System.currentTimeMillis() + FLUSH_DELAY_MS;
+                    long delay;
+                    while (!closing && !compactRequested && (delay = flushAt - System.currentTimeMillis()) > 0) {
+                        wait(delay);
+                    }
+                    compact = compactRequested;
+                    compactRequested = false;
+                    last = closing;
+                }
+
+                if (compact) compact();
+                flushPending();
+                if (bytesSinceCompaction > Math.max(COMPACT_MIN_BYTES, snapshotBytes)) {
+                    compact();
+                }
+                if (last) break;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void flushPending() throws IOException {
+        synchronized (this) {
+            if (pending.position() == 0) return;
+            ByteBuffer swap = writing;
+            writing = pending;
+            pending = swap;
+            pending.clear();
+        }
+        writing.flip();
+        bytesSinceCompaction += writing.remaining();
+        while (writing.hasRemaining()) {
+            channel.write(writing);
+        }
+        channel.force(false);
+        writing.clear();
+        syncs++;
+    }
+
+    // Rewrites the journal as a header plus the current image. Records still pending
+    // are already part of the image and are simply replayed again after it.
+    private void compact() throws IOException {
+        ByteBuffer image;
+        synchronized (this) {
+            image = ByteBuffer.allocate(HEADER_BYTES + FRAME_OVERHEAD + FLEET_PAYLOAD
+                    + size * (FRAME_OVERHEAD + REMOTE_PAYLOAD));
+            long now = elapsedClock.now();
+            image.putInt(MAGIC).putInt(VERSION).putLong(wallClock.now() - now).putLong(now);
+
+            // Encode through the pending buffer helpers so both paths share one record format
+            ByteBuffer saved = pending;
+            pending = image;
+            appendFleet(size);
+            for (int id = 1; id <= size; id++) {
+                appendRemote(id, state[id - 1], value[id - 1], defaultDuration[id - 1]);
+            }
+            pending = saved;
+        }
+
+        image.flip();
+        try (RandomAccessFile out = new RandomAccessFile(tempFile, "rw")) {
+            out.setLength(0);
+            FileChannel tmp = out.getChannel();
+            while (image.hasRemaining()) {
+                tmp.write(image);
+            }
+            tmp.force(true);
+        }
+        closeChannel();
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        channel.position(channel.size());
+        snapshotBytes = image.limit();
+        bytesSinceCompaction = 0;
+        compactions++;
+    }
+
+    private void closeChannel() {
+        if (raf == null) return;
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+        raf = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,139 @@
+package com.rahayu.rctimer;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide timing metrics, cheap enough to stay on in release builds:
+// each sample is one histogram increment. Read through TimerService.dump()
+// (adb shell dumpsys activity service com.rahayu.rctimer/.TimerService, add
+// --json for the machine-readable form, --reset to clear) and the hidden
+// debug panel in the drawer.
+//
+//  tick jitter      tick ran later than it was scheduled for
+//  expiry drift     remote expired later than its deadline
+//  alarm start      alarm triggered -> first audio block mixed (or system tone started)
+//  command -> UI    first command of a batch submitted -> change delivered to the UI
+//  bind / list / dashboard draw   main thread cost of onBindViewHolder,
+//                   updateVisibleList and one DashboardView frame
+public final class TimerMetrics {
+    private static final TimerMetrics INSTANCE = new TimerMetrics();
+
+    private final LatencyStats tickJitter = new LatencyStats();
+    private final LatencyStats expiryDrift = new LatencyStats();
+    private final LatencyStats alarmStart = new LatencyStats();
+    private final LatencyStats commandToUi = new LatencyStats();
+    private final LatencyStats bind = new LatencyStats();
+    private final LatencyStats listUpdate = new LatencyStats();
+    private final LatencyStats dashboardDraw = new LatencyStats();
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+
+    // First command waiting for its change to reach the UI (System.nanoTime), 0 = none
+    private final AtomicLong commandPendingSince = new AtomicLong();
+    private final long createdAt = System.currentTimeMillis();
+
+    private TimerMetrics() {
+    }
+
+    public static TimerMetrics get() {
+        return INSTANCE;
+    }
+
+    public LatencyStats getTickJitter() {
+        return tickJitter;
+    }
+
+    public LatencyStats getExpiryDrift() {
+        return expiryDrift;
+    }
+
+    public LatencyStats getAlarmStart() {
+        return alarmStart;
+    }
+
+    public LatencyStats getCommandToUi() {
+        return commandToUi;
+    }
+
+    public LatencyStats getBind() {
+        return bind;
+    }
+
+    public LatencyStats getListUpdate() {
+        return listUpdate;
+    }
+
+    public LatencyStats getDashboardDraw() {
+        return dashboardDraw;
+    }
+
+    public void onTick(long lateNanos) {
+        ticks.incrementAndGet();
+        tickJitter.record(lateNanos);
+    }
+
+    public void onExpired(long driftNanos) {
+        expirations.incrementAndGet();
+        expiryDrift.record(driftNanos);
+    }
+
+    // A command batch was applied; keeps the oldest submit time until delivery
+    public void onCommandsApplied(long submittedNanos) {
+        if (submittedNanos != 0) commandPendingSince.compareAndSet(0, submittedNanos);
+    }
+
+    // Changes reached the UI listeners
+    public void onDelivered() {
+        deliveries.incrementAndGet();
+        long since = commandPendingSince.getAndSet(0);
+        if (since != 0) commandToUi.record(System.nanoTime() - since);
+    }
+
+    public void reset() {
+        tickJitter.reset();
+        expiryDrift.reset();
+        alarmStart.reset();
+        commandToUi.reset();
+        bind.reset();
+        listUpdate.reset();
+        dashboardDraw.reset();
+        ticks.set(0);
+        expirations.set(0);
+        deliveries.set(0);
+        commandPendingSince.set(0);
+    }
+
+    // Human readable, one metric per line
+    public void appendText(StringBuilder out) {
+        out.append("ticks=").append(ticks.get())
+                .append(" expirations=").append(expirations.get())
+                .append(" deliveries=").append(deliveries.get()).append('\n');
+        out.append("tick jitter:    ").append(tickJitter).append('\n');
+        out.append("expiry drift:   ").append(expiryDrift).append('\n');
+        out.append("alarm start:    ").append(alarmStart).append('\n');
+        out.append("command -> UI:  ").append(commandToUi).append('\n');
+        out.append("bind:           ").append(bind).append('\n');
+        out.append("list update:    ").append(listUpdate).append('\n');
+        out.append("dashboard draw: ").append(dashboardDraw).append('\n');
+    }
+
+    // Body of a JSON object (no braces) so callers can add their own counters
+    public void appendJsonFields(StringBuilder out) {
+        out.append(String.format(Locale.US, "\"since_wall_ms\":%d,\"ticks\":%d,\"expirations\":%d,\"deliveries\":%d",
+                createdAt, ticks.get(), expirations.get(), deliveries.get()));
+        appendHistogram(out, "tick_jitter", tickJitter);
+        appendHistogram(out, "expiry_drift", expiryDrift);
+        appendHistogram(out, "alarm_start", alarmStart);
+        appendHistogram(out, "command_to_ui", commandToUi);
+        appendHistogram(out, "bind", bind);
+        appendHistogram(out, "list_update", listUpdate);
+        appendHistogram(out, "dashboard_draw", dashboardDraw);
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, LatencyStats stats) {
+        out.append(",\"").append(name).append("\":");
+        stats.appendJson(out);
+    }
+}
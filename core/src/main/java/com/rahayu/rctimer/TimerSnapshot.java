@@ -0,0 +1,69 @@
+package com.rahayu.rctimer;
+
+// Immutable, versioned view of the fleet published by TimerStore.
+// Safe to read from any thread without locking; compare version() with the
+// last one seen to tell whether anything changed in between.
+public final class TimerSnapshot {
+    private final long version;
+    private final int size;
+    private final int alarmingCount;
+    private final byte[] state;
+    private final long[] deadline;
+    private final long[] remaining;
+    private final long[] defaultDuration;
+
+    TimerSnapshot(long version, int size, int alarmingCount, byte[] state, long[] deadline,
+                  long[] remaining, long[] defaultDuration) {
+        this.version = version;
+        this.size = size;
+        this.alarmingCount = alarmingCount;
+        this.state = state;
+        this.deadline = deadline;
+        this.remaining = remaining;
+        this.defaultDuration = defaultDuration;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getAlarmingCount() {
+        return alarmingCount;
+    }
+
+    public boolean contains(int id) {
+        return id >= 1 && id <= size;
+    }
+
+    public byte getState(int id) {
+        return state[id - 1];
+    }
+
+    public boolean isRunning(int id) {
+        return state[id - 1] == TimerStore.STATE_RUNNING;
+    }
+
+    public boolean isAlarming(int id) {
+        return state[id - 1] == TimerStore.STATE_ALARMING;
+    }
+
+    public long getDeadline(int id) {
+        return deadline[id - 1];
+    }
+
+    public long getDefaultDuration(int id) {
+        return defaultDuration[id - 1];
+    }
+
+    public long getRemaining(int id, long now) {
+        int i = id - 1;
+        if (state[i] == TimerStore.STATE_RUNNING) {
+            return Math.max(0, deadline[i] - now);
+        }
+        return remaining[i];
+    }
+}
@@ -0,0 +1,202 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Compact, primitive-backed state for the whole fleet. Remote ids are 1..size and
+// map straight to array slots, so every lookup is O(1) and iterating the fleet
+// never touches a boxed object.
+//
+// The arrays below are the writer's working copy and are only touched under the
+// store lock. Other threads read the immutable TimerSnapshot returned by
+// snapshot(), which publish() replaces (copy-on-write) after each batch of changes.
+public class TimerStore {
+    public static final byte STATE_IDLE = 0;     // Stopped or paused, remaining[] holds banked time
+    public static final byte STATE_RUNNING = 1;  // deadline[] holds the clock time it hits zero
+    public static final byte STATE_ALARMING = 2; // Expired, waiting for STOP/RESET
+
+    public static final int MAX_FLEET_SIZE = 1000;
+
+    private int size;
+    private byte[] state;
+    private long[] deadline;
+    private long[] remaining;
+    private long[] defaultDuration;
+    private final long initialDuration;
+    private final int maxSize;
+    private int alarmingCount;
+
+    private long version;
+    private boolean dirty;
+    private volatile TimerSnapshot published;
+
+    public TimerStore(int size, long initialDuration) {
+        this(size, initialDuration, MAX_FLEET_SIZE);
+    }
+
+    // maxSize above MAX_FLEET_SIZE is for benchmarks and simulations, the app caps at MAX_FLEET_SIZE
+    public TimerStore(int size, long initialDuration, int maxSize) {
+        this.initialDuration = initialDuration;
+        this.maxSize = maxSize;
+        this.state = new byte[0];
+        this.deadline = new long[0];
+        this.remaining = new long[0];
+        this.defaultDuration = new long[0];
+        resize(size);
+        publish();
+    }
+
+    // Lock-free read of the latest published state
+    public TimerSnapshot snapshot() {
+        return published;
+    }
+
+    public long version() {
+        return published.version();
+    }
+
+    // Publishes the working arrays as a new snapshot if anything changed since the last one
+    public synchronized TimerSnapshot publish() {
+        if (dirty || published == null) {
+            published = new TimerSnapshot(++version, size, alarmingCount, state.clone(),
+                    deadline.clone(), remaining.clone(), defaultDuration.clone());
+            dirty = false;
+        }
+        return published;
+    }
+
+    // Grows or shrinks the fleet, keeping the state of remotes that survive
+    public synchronized void resize(int newSize) {
+        dirty = true;
+        newSize = Math.max(1, Math.min(maxSize, newSize));
+        int oldSize = size;
+        for (int i = newSize; i < oldSize; i++) {
+            if (state[i] == STATE_ALARMING) alarmingCount--;
+        }
+        state = Arrays.copyOf(state, newSize);
+        deadline = Arrays.copyOf(deadline, newSize);
+        remaining = Arrays.copyOf(remaining, newSize);
+        defaultDuration = Arrays.copyOf(defaultDuration, newSize);
+        for (int i = oldSize; i < newSize; i++) {
+            defaultDuration[i] = initialDuration;
+            remaining[i] = initialDuration;
+        }
+        size = newSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getAlarmingCount() {
+        return alarmingCount;
+    }
+
+    public boolean contains(int id) {
+        return id >= 1 && id <= size;
+    }
+
+    public byte getState(int id) {
+        return state[id - 1];
+    }
+
+    public boolean isRunning(int id) {
+        return state[id - 1] == STATE_RUNNING;
+    }
+
+    public boolean isAlarming(int id) {
+        return state[id - 1] == STATE_ALARMING;
+    }
+
+    public long getDeadline(int id) {
+        return deadline[id - 1];
+    }
+
+    public long getDefaultDuration(int id) {
+        return defaultDuration[id - 1];
+    }
+
+    // Remaining time is derived from the deadline when read, so it never depends on tick regularity
+    public long getRemaining(int id, long now) {
+        int i = id - 1;
+        if (state[i] == STATE_RUNNING) {
+            return Math.max(0, deadline[i] - now);
+        }
+        return remaining[i];
+    }
+
+    public synchronized void start(int id, long now) {
+        dirty = true;
+        int i = id - 1;
+        if (state[i] == STATE_RUNNING) return;
+        deadline[i] = now + remaining[i];
+        setState(i, STATE_RUNNING);
+    }
+
+    // Bank whatever is left so resume continues from the exact same point
+    public synchronized void pause(int id, long now) {
+        dirty = true;
+        int i = id - 1;
+        if (state[i] != STATE_RUNNING) return;
+        remaining[i] = Math.max(0, deadline[i] - now);
+        setState(i, STATE_IDLE);
+    }
+
+    public synchronized void reset(int id) {
+        dirty = true;
+        int i = id - 1;
+        setState(i, STATE_IDLE);
+        remaining[i] = defaultDuration[i];
+    }
+
+    public synchronized void expire(int id) {
+        dirty = true;
+        int i = id - 1;
+        setState(i, STATE_ALARMING);
+        remaining[i] = 0;
+    }
+
+    public synchronized void stopAlarm(int id) {
+        dirty = true;
+        int i = id - 1;
+        if (state[i] == STATE_ALARMING) setState(i, STATE_IDLE);
+    }
+
+    public synchronized void setDefaultDuration(int id, long millis, long now) {
+        dirty = true;
+        int i = id - 1;
+        defaultDuration[i] = millis;
+        remaining[i] = millis; // Also reset current
+        if (state[i] == STATE_RUNNING) {
+            deadline[i] = now + millis;
+        }
+    }
+
+    // Adds time to a rental: pushes a running deadline out, or adds to the banked
+    // time otherwise. An alarming remote goes back to idle with the extra time.
+    public synchronized void extend(int id, long millis) {
+        dirty = true;
+        int i = id - 1;
+        if (state[i] == STATE_RUNNING) {
+            deadline[i] += millis;
+        } else {
+            if (state[i] == STATE_ALARMING) setState(i, STATE_IDLE);
+            remaining[i] += millis;
+        }
+    }
+
+    // Overwrites one remote wholesale, used when replaying the journal
+    public synchronized void restore(int id, byte newState, long newDeadline, long newRemaining, long newDefault) {
+        dirty = true;
+        int i = id - 1;
+        setState(i, newState);
+        deadline[i] = newDeadline;
+        remaining[i] = newRemaining;
+        defaultDuration[i] = newDefault;
+    }
+
+    private void setState(int i, byte newState) {
+        if (state[i] == STATE_ALARMING) alarmingCount--;
+        if (newState == STATE_ALARMING) alarmingCount++;
+        state[i] = newState;
+    }
+}
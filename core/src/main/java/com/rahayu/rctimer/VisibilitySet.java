@@ -0,0 +1,36 @@
+package com.rahayu.rctimer;
+
+import java.util.Arrays;
+
+// Which remotes are shown on the dashboard, one bit per remote id.
+// Bits mark HIDDEN remotes so new ids (fleet growth) default to visible.
+public class VisibilitySet {
+    private long[] hidden = new long[1];
+
+    public boolean isVisible(int id) {
+        int word = id >>> 6;
+        return word >= hidden.length || (hidden[word] & (1L << id)) == 0;
+    }
+
+    public void setVisible(int id, boolean visible) {
+        int word = id >>> 6;
+        if (word >= hidden.length) {
+            if (visible) return;
+            hidden = Arrays.copyOf(hidden, Math.max(word + 1, hidden.length * 2));
+        }
+        if (visible) {
+            hidden[word] &= ~(1L << id);
+        } else {
+            hidden[word] |= 1L << id;
+        }
+    }
+
+    // Writes the visible ids among 1..size into out (needs size room), returns the count
+    public int fillVisibleIds(int size, int[] out) {
+        int count = 0;
+        for (int id = 1; id <= size; id++) {
+            if (isVisible(id)) out[count++] = id;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,127 @@
+package com.rahayu.rctimer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Text form of a command stream, one command per line in time order:
+//
+//   # rc-timer trace v1
+//   <virtual ms> <op> <remote id> [argument ms or fleet size]
+//
+// ops: start, pause, reset, stop, default, extend, fleet, reset_expired.
+// LoadSimulator writes the commands its workload generates (--trace-out), and
+// replays a file instead of generating (--trace-in), so a run can be reproduced
+// exactly and compared across versions.
+public class CommandTrace {
+    public static final String HEADER = "# rc-timer trace v1";
+
+    public static final String OP_START = "start";
+    public static final String OP_PAUSE = "pause";
+    public static final String OP_RESET = "reset";
+    public static final String OP_STOP = "stop";
+    public static final String OP_DEFAULT = "default";
+    public static final String OP_EXTEND = "extend";
+    public static final String OP_FLEET = "fleet";
+    public static final String OP_RESET_EXPIRED = "reset_expired";
+
+    public static final class Command {
+        public final long time;
+        public final String op;
+        public final int remoteId;
+        public final long argument;
+
+        public Command(long time, String op, int remoteId, long argument) {
+            this.time = time;
+            this.op = op;
+            this.remoteId = remoteId;
+            this.argument = argument;
+        }
+    }
+
+    // Parses a whole trace; lines starting with # are comments
+    public static List<Command> read(File file) throws IOException {
+        List<Command> commands = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNo = 0;
+            long last = Long.MIN_VALUE;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length < 3) throw new IOException(file + ":" + lineNo + ": expected <time> <op> <id> [arg]");
+                try {
+                    long time = Long.parseLong(parts[0]);
+                    if (time < last) throw new IOException(file + ":" + lineNo + ": time goes backwards");
+                    last = time;
+                    long argument = parts.length > 3 ? Long.parseLong(parts[3]) : 0;
+                    commands.add(new Command(time, parts[1], Integer.parseInt(parts[2]), argument));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+        return commands;
+    }
+
+    // Submits one command to the bus, same mapping as TimerService.handleCommand
+    public static void submit(CommandBus bus, String op, int remoteId, long argument) {
+        switch (op) {
+            case OP_START:
+                bus.start(remoteId);
+                break;
+            case OP_PAUSE:
+                bus.pause(remoteId);
+                break;
+            case OP_RESET:
+                bus.reset(remoteId);
+                break;
+            case OP_STOP:
+                bus.stopAlarm(remoteId);
+                break;
+            case OP_DEFAULT:
+                bus.setDefault(remoteId, argument);
+                break;
+            case OP_EXTEND:
+                bus.extend(remoteId, argument);
+                break;
+            case OP_FLEET:
+                bus.setFleetSize((int) argument);
+                break;
+            case OP_RESET_EXPIRED:
+                bus.resetAllExpired();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trace op: " + op);
+        }
+    }
+
+    // Appends commands as they are generated
+    public static final class Writer implements Closeable {
+        private final BufferedWriter out;
+
+        public Writer(File file) throws IOException {
+            out = new BufferedWriter(new FileWriter(file));
+            out.write(HEADER);
+            out.newLine();
+        }
+
+        public void write(long time, String op, int remoteId, long argument) throws IOException {
+            out.write(time + " " + op + " " + remoteId + (argument != 0 ? " " + argument : ""));
+            out.newLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
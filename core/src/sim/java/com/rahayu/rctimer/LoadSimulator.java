@@ -0,0 +1,460 @@
+package com.rahayu.rctimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+// Discrete-event load simulator for the timer core. Runs the same pieces the
+// service runs (CommandBus coalescing, CommandApplier, TimerEngine with the
+// tick loop following nextTickDelay(), SessionRecorder, AlarmDispatcher)
+// against a virtual clock, so days of shop time take seconds.
+//
+// The workload is either generated from a seed (a busy weekend: arrivals that
+// peak in the afternoon, group rentals that expire together, staff hammering
+// START/PAUSE, alarms acknowledged after a human delay) or replayed from a
+// CommandTrace. The same seed or trace always gives the same run; the final
+// state fingerprint makes that easy to check across versions.
+//
+//   ./gradlew :core:simulate --args='--days 2 --fleet 300 --seed 7'
+//   ./gradlew :core:simulate --args='--trace-in weekend.trace --seed 7'
+//
+// A replay needs the recording's --seed to get the same tick jitter, and with
+// it the same lateness figures; the final state does not depend on it.
+public class LoadSimulator {
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long WALL_EPOCH = 1717200000000L; // Fixed, sessions get stable timestamps
+
+    private static final long OPEN_AT = 8 * HOUR;
+    private static final long CLOSE_AT = 22 * HOUR;
+    private static final long[] DURATIONS = {5 * MINUTE, 10 * MINUTE, 15 * MINUTE, 20 * MINUTE, 30 * MINUTE, HOUR};
+    private static final int[] DURATION_WEIGHTS = {10, 25, 30, 15, 15, 5};
+
+    // Event types
+    private static final int EV_TICK = 0;
+    private static final int EV_DRAIN = 1;
+    private static final int EV_COMMAND = 2;
+    private static final int EV_ARRIVAL = 3;
+    private static final int EV_ACK = 4;
+    private static final int EV_HAMMER = 5;
+    private static final int EV_RESUME = 6;
+    private static final int EV_ROTATE = 7;
+    private static final int EV_SAMPLE = 8;
+
+    private static final class Event implements Comparable<Event> {
+        final long time;
+        final long seq;
+        final int type;
+        final int remoteId;
+        final long argument;
+        final String op;
+
+        Event(long time, long seq, int type, int remoteId, long argument, String op) {
+            this.time = time;
+            this.seq = seq;
+            this.type = type;
+            this.remoteId = remoteId;
+            this.argument = argument;
+            this.op = op;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return time != o.time ? Long.compare(time, o.time) : Long.compare(seq, o.seq);
+        }
+    }
+
+    public static final class Options {
+        long seed = 1;
+        int days = 2;
+        int fleet = 300;
+        AlarmDispatcher.Policy policy = AlarmDispatcher.Policy.MIX_ALL;
+        double tickJitterMs = 2;     // Mean extra delay of a tick (handler/scheduling noise)
+        long sampleMillis = HOUR;    // Queue depth reporting interval
+        File traceIn;
+        File traceOut;
+    }
+
+    private final Options options;
+    private final Random random;        // Workload
+    private final Random jitterRandom;  // Tick jitter, separate so a replayed trace ticks identically
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long seq;
+    private long now;
+
+    private final TimerStore store;
+    private final TimerEngine engine;
+    private final CommandBus bus;
+    private final CommandBatch batch = new CommandBatch();
+    private final CommandApplier applier;
+    private final SessionRecorder sessions;
+    private final AlarmDispatcher dispatcher;
+    private CommandTrace.Writer traceWriter;
+
+    // Tick loop, as TickScheduler: one pending tick, re-aligned after every batch
+    private long tickGeneration;
+    private long rotateGeneration;
+
+    // Results
+    private long eventCount;
+    private long ticks;
+    private long rentals;
+    private long groupRentals;
+    private long expirations;
+    private long hammerTaps;
+    private long sessionsClosed;
+    private long billedMillis;
+    private final LatencyStats expiryLateness = new LatencyStats();
+    private final LatencyStats ackDelay = new LatencyStats();
+    private int maxDepth;
+    private int intervalMaxDepth;
+    private long depthArea;          // Sum of depth * ms, for the time-weighted mean
+    private long depthChangedAt;
+    private final StringBuilder depthSeries = new StringBuilder();
+
+    public LoadSimulator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.jitterRandom = new Random(options.seed * 31 + 17);
+        int cap = Math.max(options.fleet, TimerStore.MAX_FLEET_SIZE);
+        store = new TimerStore(options.fleet, 15 * MINUTE, cap);
+        engine = new TimerEngine(() -> now, store);
+        bus = new CommandBus(task -> schedule(now, EV_DRAIN, 0, 0, null), () -> { });
+        sessions = new SessionRecorder(() -> now, () -> WALL_EPOCH + now,
+                (id, startWall, endWall, billed, ackDelayMillis, pauses, reason) -> {
+                    sessionsClosed++;
+                    billedMillis += billed;
+                    if (ackDelayMillis >= 0) ackDelay.record(ackDelayMillis * 1000000L);
+                }, options.fleet);
+        dispatcher = new AlarmDispatcher(options.policy, AlarmDispatcher.DEFAULT_SLICE_MILLIS, (id, audible) -> { });
+        applier = new CommandApplier(engine, sessions, new CommandApplier.Effects() {
+            @Override
+            public void onAlarmStopped(int remoteId) {
+                updateDepth(() -> dispatcher.remove(remoteId, now));
+            }
+
+            @Override
+            public void onRemoteChanged(int remoteId, int kind) {
+            }
+
+            @Override
+            public void onLocalChange(int remoteId, int ops) {
+            }
+
+            @Override
+            public void onFleetResized() {
+            }
+        });
+        engine.setListener(this::onExpired);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = parse(args);
+        LoadSimulator simulator = new LoadSimulator(options);
+        long startNanos = System.nanoTime();
+        simulator.run();
+        long wallNanos = System.nanoTime() - startNanos;
+        System.out.print(simulator.report(wallNanos));
+    }
+
+    public void run() throws IOException {
+        long end = options.days * DAY;
+        if (options.traceIn != null) {
+            List<CommandTrace.Command> commands = CommandTrace.read(options.traceIn);
+            for (CommandTrace.Command c : commands) {
+                schedule(c.time, EV_COMMAND, c.remoteId, c.argument, c.op);
+                end = Math.max(end, c.time);
+            }
+        } else {
+            for (int day = 0; day < options.days; day++) {
+                scheduleNextArrival(day * DAY + OPEN_AT);
+            }
+        }
+        if (options.traceOut != null) traceWriter = new CommandTrace.Writer(options.traceOut);
+        for (long t = options.sampleMillis; t <= end; t += options.sampleMillis) {
+            schedule(t, EV_SAMPLE, 0, 0, null);
+        }
+
+        try {
+            while (!events.isEmpty() && events.peek().time <= end) {
+                Event event = events.poll();
+                now = event.time;
+                eventCount++;
+                handle(event);
+            }
+        } finally {
+            if (traceWriter != null) traceWriter.close();
+        }
+        now = end;
+        updateDepth(null);
+    }
+
+    private void handle(Event event) throws IOException {
+        switch (event.type) {
+            case EV_TICK:
+                if (event.argument != tickGeneration) return; // Superseded by a wake()
+                ticks++;
+                engine.tick();
+                scheduleTick();
+                break;
+            case EV_DRAIN:
+                bus.drainTo(batch);
+                if (batch.isEmpty()) return;
+                applier.apply(batch);
+                wakeTicks();
+                break;
+            case EV_COMMAND:
+                submit(event.op, event.remoteId, event.argument);
+                break;
+            case EV_ARRIVAL:
+                onArrival(event.argument);
+                break;
+            case EV_ACK:
+                onAck(event.remoteId);
+                break;
+            case EV_HAMMER:
+                onHammer(event.remoteId, (int) event.argument);
+                break;
+            case EV_RESUME:
+                if (store.contains(event.remoteId) && store.getState(event.remoteId) == TimerStore.STATE_IDLE) {
+                    submit(CommandTrace.OP_START, event.remoteId, 0);
+                }
+                break;
+            case EV_ROTATE:
+                if (event.argument == rotateGeneration) scheduleRotation();
+                break;
+            case EV_SAMPLE:
+                updateDepth(null);
+                depthSeries.append(String.format(Locale.US, "  day %d %02d:%02d  %d%n",
+                        now / DAY + 1, (now % DAY) / HOUR, (now % HOUR) / MINUTE, intervalMaxDepth));
+                intervalMaxDepth = dispatcher.size();
+                break;
+        }
+    }
+
+    // --- Engine side, mirrors TimerService ---
+
+    private void onExpired(int id) {
+        long deadline = store.getDeadline(id);
+        expirations++;
+        expiryLateness.record((now - deadline) * 1000000L);
+        sessions.onExpired(id, deadline);
+        updateDepth(() -> dispatcher.add(id, now));
+        if (options.traceIn == null) {
+            // Staff notice the alarm after a human delay (log-normal, median ~30 s)
+            long delay = (long) Math.min(20 * MINUTE, 30 * SECOND * Math.exp(random.nextGaussian()));
+            schedule(now + delay, EV_ACK, id, 0, null);
+        }
+    }
+
+    private void wakeTicks() {
+        tickGeneration++;
+        scheduleTick();
+    }
+
+    private void scheduleTick() {
+        long delay = engine.nextTickDelay();
+        if (delay < 0) return; // Parked until the next command
+        long jitter = options.tickJitterMs > 0
+                ? (long) (-options.tickJitterMs * Math.log(1 - jitterRandom.nextDouble())) : 0;
+        schedule(now + delay + jitter, EV_TICK, 0, tickGeneration, null);
+    }
+
+    private void scheduleRotation() {
+        long delay = dispatcher.tick(now);
+        rotateGeneration++;
+        if (delay >= 0) schedule(now + delay, EV_ROTATE, 0, rotateGeneration, null);
+    }
+
+    private void updateDepth(Runnable change) {
+        depthArea += (long) dispatcher.size() * (now - depthChangedAt);
+        depthChangedAt = now;
+        if (change == null) return;
+        change.run();
+        int depth = dispatcher.size();
+        maxDepth = Math.max(maxDepth, depth);
+        intervalMaxDepth = Math.max(intervalMaxDepth, depth);
+        scheduleRotation();
+    }
+
+    private void submit(String op, int remoteId, long argument) throws IOException {
+        if (traceWriter != null) traceWriter.write(now, op, remoteId, argument);
+        CommandTrace.submit(bus, op, remoteId, argument);
+    }
+
+    // --- Generated workload ---
+
+    // Arrival rate over the opening hours: quiet morning, afternoon peak
+    private double arrivalsPerHour(long timeOfDay) {
+        double phase = (double) (timeOfDay - OPEN_AT) / (CLOSE_AT - OPEN_AT);
+        return options.fleet * 0.5 * (0.3 + 0.7 * Math.sin(Math.PI * phase));
+    }
+
+    // Thinned Poisson process within the day's opening hours
+    private void scheduleNextArrival(long from) {
+        long day = from / DAY;
+        double peak = options.fleet * 0.5;
+        long t = from;
+        while (true) {
+            t += (long) (-Math.log(1 - random.nextDouble()) / peak * HOUR);
+            if (t % DAY >= CLOSE_AT || t / DAY != day) return;
+            if (random.nextDouble() * peak <= arrivalsPerHour(t % DAY)) break;
+        }
+        schedule(t, EV_ARRIVAL, 0, t, null);
+    }
+
+    private void onArrival(long at) throws IOException {
+        scheduleNextArrival(at);
+        // One in ten arrivals is a group that races together and expires together
+        int wanted = random.nextInt(10) == 0 ? 3 + random.nextInt(10) : 1;
+        long duration = pickDuration();
+        int started = 0;
+        int offset = random.nextInt(store.size());
+        for (int i = 0; i < store.size() && started < wanted; i++) {
+            int id = 1 + (offset + i) % store.size();
+            if (store.getState(id) == TimerStore.STATE_RUNNING || store.isAlarming(id)) continue;
+            if (store.getDefaultDuration(id) != duration) {
+                submit(CommandTrace.OP_DEFAULT, id, duration);
+            } else {
+                submit(CommandTrace.OP_RESET, id, 0);
+            }
+            submit(CommandTrace.OP_START, id, 0);
+            started++;
+            rentals++;
+            // Some customers make staff hammer START/PAUSE mid-rental
+            if (random.nextInt(100) < 15) {
+                schedule(now + (long) (random.nextDouble() * duration), EV_HAMMER, id, 2 + random.nextInt(5), null);
+            }
+        }
+        if (wanted > 1 && started > 1) groupRentals++;
+    }
+
+    private void onHammer(int id, int taps) throws IOException {
+        if (!store.contains(id) || store.getState(id) != TimerStore.STATE_RUNNING) return;
+        // Taps 150 ms apart; each one toggles like the tile button does
+        for (int tap = 0; tap < taps; tap++) {
+            String op = (tap % 2 == 0) ? CommandTrace.OP_PAUSE : CommandTrace.OP_START;
+            schedule(now + tap * 150L, EV_COMMAND, id, 0, op);
+            hammerTaps++;
+        }
+        if (taps % 2 == 1) {
+            // Ended paused, the customer takes a break
+            schedule(now + taps * 150L + MINUTE + (long) (random.nextDouble() * 4 * MINUTE), EV_RESUME, id, 0, null);
+        }
+    }
+
+    private void onAck(int id) throws IOException {
+        if (!store.contains(id) || !store.isAlarming(id)) return;
+        if (dispatcher.size() >= 8 && random.nextBoolean()) {
+            // Too many ringing, staff hit RESET SEMUA
+            submit(CommandTrace.OP_RESET_EXPIRED, -1, 0);
+            return;
+        }
+        int roll = random.nextInt(100);
+        if (roll < 75) {
+            submit(CommandTrace.OP_RESET, id, 0);
+        } else if (roll < 95) {
+            submit(CommandTrace.OP_EXTEND, id, 10 * MINUTE);
+            submit(CommandTrace.OP_START, id, 0);
+        } else {
+            submit(CommandTrace.OP_STOP, id, 0);
+        }
+    }
+
+    private long pickDuration() {
+        int total = 0;
+        for (int w : DURATION_WEIGHTS) total += w;
+        int roll = random.nextInt(total);
+        for (int i = 0; i < DURATIONS.length; i++) {
+            roll -= DURATION_WEIGHTS[i];
+            if (roll < 0) return DURATIONS[i];
+        }
+        return DURATIONS[DURATIONS.length - 1];
+    }
+
+    private void schedule(long time, int type, int remoteId, long argument, String op) {
+        events.add(new Event(time, seq++, type, remoteId, argument, op));
+    }
+
+    // --- Report ---
+
+    // CRC32 over every remote's state, deadline or banked time, and default
+    public long fingerprint() {
+        CRC32 crc = new CRC32();
+        TimerSnapshot snapshot = store.snapshot();
+        byte[] buffer = new byte[17];
+        for (int id = 1; id <= snapshot.size(); id++) {
+            long value = snapshot.isRunning(id) ? snapshot.getDeadline(id) : snapshot.getRemaining(id, 0);
+            buffer[0] = snapshot.getState(id);
+            putLong(buffer, 1, value);
+            putLong(buffer, 9, snapshot.getDefaultDuration(id));
+            crc.update(buffer, 0, buffer.length);
+        }
+        return crc.getValue();
+    }
+
+    private static void putLong(byte[] out, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            out[pos + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    public String report(long wallNanos) {
+        TimerSnapshot snapshot = store.snapshot();
+        int running = 0;
+        int alarming = snapshot.getAlarmingCount();
+        for (int id = 1; id <= snapshot.size(); id++) {
+            if (snapshot.isRunning(id)) running++;
+        }
+        double wallSeconds = Math.max(1e-9, wallNanos / 1e9);
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "simulated %.1f h (fleet %d, seed %d, policy %s%s) in %.2f s wall, %.0fx real time%n",
+                now / (double) HOUR, options.fleet, options.seed, options.policy,
+                options.traceIn != null ? ", trace " + options.traceIn.getName() : "",
+                wallSeconds, now / 1000.0 / wallSeconds));
+        out.append(String.format(Locale.US, "throughput: %d events (%.0f/s), %d commands in %d batches (%.0f commands/s), %d ticks%n",
+                eventCount, eventCount / wallSeconds, bus.getSubmittedCount(), bus.getBatchCount(),
+                bus.getSubmittedCount() / wallSeconds, ticks));
+        out.append(String.format(Locale.US, "workload: %d rentals (%d groups), %d hammer taps, %d expirations%n",
+                rentals, groupRentals, hammerTaps, expirations));
+        out.append(String.format(Locale.US, "sessions: %d closed, %.1f h billed%n", sessionsClosed, billedMillis / (double) HOUR));
+        out.append("expiry lateness: ").append(expiryLateness).append('\n');
+        out.append(String.format(Locale.US, "  p99.9=%.1fms%n", expiryLateness.getPercentileNanos(99.9) / 1e6));
+        out.append("alarm ack delay: ").append(ackDelay).append('\n');
+        out.append(String.format(Locale.US, "alarm queue depth: max %d, time-weighted mean %.2f, %d rotations%n",
+                maxDepth, now > 0 ? depthArea / (double) now : 0, dispatcher.getRotations()));
+        out.append("  max depth in the interval ending at:\n").append(depthSeries);
+        out.append(String.format(Locale.US, "final state: %d remotes, %d running, %d alarming, %d idle, version %d, fingerprint %08x%n",
+                snapshot.size(), running, alarming, snapshot.size() - running - alarming, snapshot.version(), fingerprint()));
+        return out.toString();
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--seed": options.seed = Long.parseLong(value); i++; break;
+                case "--days": options.days = Integer.parseInt(value); i++; break;
+                case "--fleet": options.fleet = Integer.parseInt(value); i++; break;
+                case "--policy": options.policy = AlarmDispatcher.Policy.valueOf(value); i++; break;
+                case "--jitter-ms": options.tickJitterMs = Double.parseDouble(value); i++; break;
+                case "--sample-min": options.sampleMillis = Long.parseLong(value) * MINUTE; i++; break;
+                case "--trace-in": options.traceIn = new File(value); i++; break;
+                case "--trace-out": options.traceOut = new File(value); i++; break;
+                default:
+                    System.err.println("Usage: LoadSimulator [--seed N] [--days N] [--fleet N] [--policy MIX_ALL|ROUND_ROBIN|FIFO]"
+                            + " [--jitter-ms D] [--sample-min N] [--trace-in FILE] [--trace-out FILE]");
+                    System.exit(2);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,74 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChangeHandoffTest {
+
+    @Test
+    public void changesCoalesceUntilTheUiReleasesTheSet() {
+        ChangeHandoff handoff = new ChangeHandoff();
+        ChangeCoalescer pending = new ChangeCoalescer();
+
+        pending.mark(1, ChangeSet.CHANGE_STATE);
+        assertTrue(handoff.offer(pending));
+        ChangeSet first = handoff.take();
+        assertEquals(1, first.size());
+
+        // UI still reading: refused, the producer keeps coalescing
+        pending.mark(2, ChangeSet.CHANGE_STATE);
+        assertFalse(handoff.offer(pending));
+        pending.mark(2, ChangeSet.CHANGE_ALARM);
+        pending.mark(3, ChangeSet.CHANGE_STATE);
+        assertFalse(handoff.offer(pending));
+        assertTrue(pending.hasPending());
+        assertNull(handoff.take());
+
+        handoff.release(first);
+        assertTrue(handoff.offer(pending));
+        ChangeSet second = handoff.take();
+        assertSame(first, second);
+        assertEquals(2, second.size());
+        assertEquals(2, second.idAt(0));
+        assertEquals(ChangeSet.CHANGE_STATE | ChangeSet.CHANGE_ALARM, second.kindAt(0));
+        assertEquals(3, second.idAt(1));
+        assertFalse(pending.hasPending());
+    }
+
+    @Test
+    public void publishedButNotTakenIsRefusedToo() {
+        ChangeHandoff handoff = new ChangeHandoff();
+        ChangeCoalescer pending = new ChangeCoalescer();
+        pending.mark(1, ChangeSet.CHANGE_STATE);
+        assertTrue(handoff.offer(pending));
+        pending.mark(2, ChangeSet.CHANGE_STATE);
+        assertFalse(handoff.offer(pending));
+        assertEquals(1, handoff.take().size());
+    }
+
+    @Test
+    public void deliveriesReuseTheSameSet() {
+        ChangeHandoff handoff = new ChangeHandoff();
+        ChangeCoalescer pending = new ChangeCoalescer();
+        pending.mark(1, ChangeSet.CHANGE_STATE);
+        assertTrue(handoff.offer(pending));
+        ChangeSet only = handoff.take();
+        handoff.release(only);
+
+        for (int round = 0; round < 10000; round++) {
+            pending.mark(1 + round % 8, ChangeSet.CHANGE_STATE);
+            assertTrue(handoff.offer(pending));
+            ChangeSet set = handoff.take();
+            assertSame("round " + round, only, set);
+            // The producer comes by while the UI is still reading
+            pending.mark(9, ChangeSet.CHANGE_ALARM);
+            assertFalse(handoff.offer(pending));
+            handoff.release(set);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+// Coalescing keeps the net effect of a burst: applying the drained batch (in
+// CommandBus.OP_* order) must leave every remote exactly where applying the
+// same commands one by one, in submit order, would have.
+public class CommandBusTest {
+    private static final long DEFAULT = 10 * 60 * 1000L;
+
+    private final List<Runnable> posted = new ArrayList<>();
+    private final CommandBus bus = new CommandBus(posted::add, () -> { });
+
+    private CommandBatch drain() {
+        CommandBatch batch = new CommandBatch();
+        bus.drainTo(batch);
+        return batch;
+    }
+
+    // Ops pending for id in a freshly drained batch, 0 if untouched
+    private int opsFor(CommandBatch batch, int id) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.idAt(i) == id) return batch.opsAt(i);
+        }
+        return 0;
+    }
+
+    @Test
+    public void oneDrainPerBurst() {
+        for (int id = 1; id <= 20; id++) bus.start(id);
+        bus.extendSelected(new int[]{1, 2, 3}, 3, 60000);
+        bus.resetAllExpired();
+        assertEquals(1, posted.size());
+
+        CommandBatch batch = drain();
+        assertEquals(20, batch.size());
+        assertTrue(batch.isResetExpired());
+        assertEquals(23, bus.getSubmittedCount());
+        assertEquals(1, bus.getBatchCount());
+
+        // Drained: the next command posts a new drain, and an empty drain is empty
+        bus.pause(4);
+        assertEquals(2, posted.size());
+        assertEquals(1, drain().size());
+        assertTrue(drain().isEmpty());
+    }
+
+    @Test
+    public void startAndPauseCancelLastOneWins() {
+        bus.start(1);
+        bus.pause(1);
+        bus.pause(2);
+        bus.start(2);
+        bus.start(3);
+        bus.pause(3);
+        bus.start(3);
+        CommandBatch batch = drain();
+        // The dropped START had already acknowledged a possible alarm
+        assertEquals(CommandBus.OP_STOP_ALARM | CommandBus.OP_PAUSE, opsFor(batch, 1));
+        assertEquals(CommandBus.OP_START, opsFor(batch, 2));
+        assertEquals(CommandBus.OP_START | CommandBus.OP_STOP_ALARM, opsFor(batch, 3));
+    }
+
+    // Extending an alarming remote ends its alarm; a later default that drops the
+    // extension must not bring the alarm back
+    @Test
+    public void droppedExtensionKeepsItsAcknowledgement() {
+        bus.extend(1, 60000);
+        bus.setDefault(1, 20000);
+        bus.extend(2, 60000);
+        bus.reset(2);
+        CommandBatch batch = drain();
+        assertEquals(CommandBus.OP_STOP_ALARM | CommandBus.OP_SET_DEFAULT, opsFor(batch, 1));
+        assertEquals(CommandBus.OP_RESET, opsFor(batch, 2)); // RESET ends the alarm itself
+    }
+
+    @Test
+    public void resetDropsPendingStartPauseAndExtensions() {
+        bus.setDefault(1, 5000);
+        bus.stopAlarm(1);
+        bus.start(1);
+        bus.extend(1, 60000);
+        bus.reset(1);
+        bus.pause(2);
+        bus.reset(2);
+        CommandBatch batch = drain();
+        assertEquals(CommandBus.OP_STOP_ALARM | CommandBus.OP_SET_DEFAULT | CommandBus.OP_RESET, opsFor(batch, 1));
+        assertEquals(0, batch.extendMillisAt(0));
+        assertEquals(5000, batch.defaultMillisAt(0));
+        assertEquals(CommandBus.OP_RESET, opsFor(batch, 2));
+
+        // Commands after the reset are kept
+        bus.reset(3);
+        bus.start(3);
+        bus.extend(3, 1000);
+        assertEquals(CommandBus.OP_RESET | CommandBus.OP_START | CommandBus.OP_EXTEND, opsFor(drain(), 3));
+    }
+
+    @Test
+    public void setDefaultDropsExtensionsAndExtensionsAddUp() {
+        bus.extend(1, 60000);
+        bus.extend(1, 30000);
+        bus.setDefault(1, 20000);
+        bus.setDefault(1, 40000); // Last default wins
+        bus.extend(1, 5000);
+        bus.extend(1, 7000);
+        CommandBatch batch = drain();
+        // The dropped extensions leave their alarm acknowledgement behind
+        assertEquals(CommandBus.OP_STOP_ALARM | CommandBus.OP_SET_DEFAULT | CommandBus.OP_EXTEND, batch.opsAt(0));
+        assertEquals(40000, batch.defaultMillisAt(0));
+        assertEquals(12000, batch.extendMillisAt(0));
+
+        // Nothing carries over into the next batch
+        bus.extend(1, 1000);
+        batch = drain();
+        assertEquals(CommandBus.OP_EXTEND, batch.opsAt(0));
+        assertEquals(1000, batch.extendMillisAt(0));
+    }
+
+    // The ops are applied in bit order, not submit order. START then SET_DEFAULT
+    // runs as SET_DEFAULT then START: the same end state, because a new default
+    // also restarts a running countdown from the new time.
+    @Test
+    public void startThenSetDefaultMatchesSubmitOrder() {
+        Fleet coalesced = new Fleet();
+        Fleet sequential = new Fleet();
+        for (Fleet fleet : new Fleet[]{coalesced, sequential}) fleet.prepare();
+
+        for (int id = 1; id <= Fleet.SIZE; id++) {
+            bus.start(id);
+            bus.setDefault(id, 3 * 60 * 1000L);
+        }
+        CommandBatch batch = drain();
+        assertEquals(CommandBus.OP_SET_DEFAULT | CommandBus.OP_START, batch.opsAt(0));
+        coalesced.applier.apply(batch);
+
+        for (int id = 1; id <= Fleet.SIZE; id++) {
+            sequential.submit(id, 0, 0); // START
+            sequential.submit(id, 4, 3 * 60 * 1000L); // SET_DEFAULT
+        }
+        for (int id = 1; id <= Fleet.SIZE; id++) {
+            assertTrue(coalesced.engine.snapshot().isRunning(id));
+            assertEquals(coalesced.now + 3 * 60 * 1000L, coalesced.engine.snapshot().getDeadline(id));
+        }
+        assertSameState(sequential, coalesced, "start, setDefault");
+    }
+
+    // Random bursts of every command against idle, running, paused and alarming
+    // remotes: one coalesced batch ends where one-by-one application does
+    @Test
+    public void coalescedBurstsMatchSubmitOrder() {
+        Random random = new Random(5);
+        String[] names = {"start", "pause", "reset", "stopAlarm", "setDefault", "extend"};
+        for (int round = 0; round < 2000; round++) {
+            Fleet coalesced = new Fleet();
+            Fleet sequential = new Fleet();
+            coalesced.prepare();
+            sequential.prepare();
+
+            StringBuilder burst = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            int[] kinds = new int[length];
+            long[] values = new long[length];
+            for (int c = 0; c < length; c++) {
+                kinds[c] = random.nextInt(names.length);
+                values[c] = (1 + random.nextInt(5)) * 60000L;
+                burst.append(names[kinds[c]]).append(' ');
+            }
+            for (int id = 1; id <= Fleet.SIZE; id++) {
+                for (int c = 0; c < length; c++) {
+                    submit(bus, id, kinds[c], values[c]);
+                    sequential.submit(id, kinds[c], values[c]);
+                }
+            }
+            coalesced.applier.apply(drain());
+            assertSameState(sequential, coalesced, burst.toString());
+        }
+    }
+
+    private static void submit(CommandBus bus, int id, int kind, long value) {
+        switch (kind) {
+            case 0: bus.start(id); break;
+            case 1: bus.pause(id); break;
+            case 2: bus.reset(id); break;
+            case 3: bus.stopAlarm(id); break;
+            case 4: bus.setDefault(id, value); break;
+            default: bus.extend(id, value); break;
+        }
+    }
+
+    private static void assertSameState(Fleet expected, Fleet actual, String burst) {
+        TimerSnapshot e = expected.engine.snapshot();
+        TimerSnapshot a = actual.engine.snapshot();
+        for (int id = 1; id <= Fleet.SIZE; id++) {
+            String where = burst + "on " + Fleet.START_STATES[id - 1];
+            assertEquals(where, e.getState(id), a.getState(id));
+            assertEquals(where, e.getDefaultDuration(id), a.getDefaultDuration(id));
+            assertEquals(where, e.getRemaining(id, expected.now), a.getRemaining(id, actual.now));
+            if (e.isRunning(id)) assertEquals(where, e.getDeadline(id), a.getDeadline(id));
+            assertEquals(where, expected.alarmsStopped.contains(id), actual.alarmsStopped.contains(id));
+        }
+    }
+
+    // Four remotes, one per starting state, on a frozen virtual clock
+    private static final class Fleet {
+        static final int SIZE = 4;
+        static final String[] START_STATES = {"idle", "running", "paused", "alarming"};
+
+        long now = 1000000L;
+        final TimerEngine engine = new TimerEngine(() -> now, new TimerStore(SIZE, DEFAULT));
+        final SessionRecorder sessions = new SessionRecorder(() -> now, () -> now,
+                (id, startWall, endWall, billed, ack, pauses, reason) -> { }, SIZE);
+        final List<Integer> alarmsStopped = new ArrayList<>();
+        final CommandApplier applier = new CommandApplier(engine, sessions, new CommandApplier.Effects() {
+            @Override
+            public void onAlarmStopped(int remoteId) {
+                if (!alarmsStopped.contains(remoteId)) alarmsStopped.add(remoteId);
+            }
+
+            @Override
+            public void onRemoteChanged(int remoteId, int kind) {
+            }
+
+            @Override
+            public void onLocalChange(int remoteId, int ops) {
+            }
+
+            @Override
+            public void onFleetResized() {
+            }
+        });
+        private final CommandBus single = new CommandBus(Runnable::run, () -> { });
+
+        void prepare() {
+            engine.start(2);
+            engine.start(3);
+            engine.setDefaultTime(4, 1000);
+            engine.start(4);
+            now += 90000;
+            engine.pause(3);
+            engine.tick(); // Remote 4 expires
+            now += 5000;
+            assertTrue(engine.snapshot().isAlarming(4));
+        }
+
+        // One command, applied on its own
+        void submit(int id, int kind, long value) {
+            CommandBusTest.submit(single, id, kind, value);
+            CommandBatch batch = new CommandBatch();
+            single.drainTo(batch);
+            applier.apply(batch);
+        }
+    }
+}
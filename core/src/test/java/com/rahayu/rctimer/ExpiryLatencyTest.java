@@ -0,0 +1,163 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+// The engine thread wired like TimerService: tick, expire, raise the alarm the
+// way SoundManager does (cached clip or a decode handed to another thread) and
+// offer the changes to the UI. The UI thread sits on a taken change set for
+// seconds and clip decodes are slow; expiries must still fire on time and every
+// change must reach the UI once it wakes up.
+public class ExpiryLatencyTest {
+    private static final int FLEET = 30;
+    private static final long UI_STALL_MS = 2000;
+    private static final long DECODE_MS = 300;
+    private static final long DISPATCH_DELAY_MS = 16;
+    // Generous for a loaded CI machine, a blocking decode or UI would be hundreds of ms late
+    private static final long MAX_LATENESS_MS = 100;
+
+    private final Clock clock = () -> System.nanoTime() / 1000000L;
+    private final ScheduledExecutorService engineThread = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        engineThread.shutdownNow();
+        decodeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void expiriesStayOnTimeWhileTheUiIsBlocked() throws Exception {
+        TimerStore store = new TimerStore(FLEET, 60000);
+        TimerEngine engine = new TimerEngine(clock, store);
+        ChangeCoalescer pending = new ChangeCoalescer();
+        ChangeHandoff handoff = new ChangeHandoff();
+        // Half the clips are cached, the rest decode slowly
+        PcmCache cache = new PcmCache(1024 * 1024, id -> {
+            Thread.sleep(DECODE_MS);
+            return new PcmClip(new short[1000], 24000, 1);
+        });
+        for (int id = 1; id <= FLEET; id += 2) cache.put(id, new PcmClip(new short[1000], 24000, 1));
+
+        long[] lateness = new long[FLEET + 1];
+        BitSet voices = new BitSet();
+        CountDownLatch expired = new CountDownLatch(FLEET);
+        CountDownLatch voiced = new CountDownLatch(FLEET);
+        engine.setListener(id -> {
+            lateness[id] = clock.now() - store.getDeadline(id);
+            PcmClip clip = cache.getIfCached(id);
+            if (clip != null) {
+                synchronized (voices) { voices.set(id); }
+                voiced.countDown();
+            } else {
+                decodeExecutor.execute(() -> {
+                    try {
+                        cache.get(id);
+                        synchronized (voices) { voices.set(id); }
+                        voiced.countDown();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            pending.mark(id, ChangeSet.CHANGE_ALARM | ChangeSet.CHANGE_STATE);
+            expired.countDown();
+        });
+
+        // UI: takes the first set and then stalls while holding it
+        AtomicReference<String> failure = new AtomicReference<>();
+        BitSet delivered = new BitSet();
+        CountDownLatch uiTook = new CountDownLatch(1);
+        Thread ui = new Thread(() -> {
+            try {
+                boolean stalled = false;
+                while (!Thread.currentThread().isInterrupted()) {
+                    ChangeSet set = handoff.take();
+                    if (set == null) {
+                        Thread.sleep(5);
+                        continue;
+                    }
+                    for (int i = 0; i < set.size(); i++) {
+                        if ((set.kindAt(i) & ChangeSet.CHANGE_ALARM) != 0) {
+                            synchronized (delivered) { delivered.set(set.idAt(i)); }
+                        }
+                    }
+                    if (!stalled) {
+                        stalled = true;
+                        uiTook.countDown();
+                        Thread.sleep(UI_STALL_MS);
+                    }
+                    handoff.release(set);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e.toString());
+            }
+        }, "ui");
+        ui.start();
+
+        // Something for the UI to take before the expiries start
+        engineThread.execute(() -> {
+            pending.markFleetChanged();
+            handoff.offer(pending);
+        });
+        assertTrue(uiTook.await(5, TimeUnit.SECONDS));
+
+        // Deadlines spread over the stall
+        long start = clock.now();
+        engineThread.execute(() -> engine.batch(() -> {
+            for (int id = 1; id <= FLEET; id++) {
+                engine.setDefaultTime(id, 50 + (UI_STALL_MS - 400) * id / FLEET);
+                engine.start(id);
+            }
+        }));
+        engineThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                engine.tick();
+                // Like TimerService.dispatchChanges: try to hand off, keep coalescing while the UI is busy
+                if (pending.hasPending()) handoff.offer(pending);
+                long delay = engine.nextTickDelay();
+                if (pending.hasPending() && (delay < 0 || delay > DISPATCH_DELAY_MS)) delay = DISPATCH_DELAY_MS;
+                if (delay >= 0) engineThread.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+
+        assertTrue("expiries missing", expired.await(UI_STALL_MS + 5000, TimeUnit.MILLISECONDS));
+        assertTrue("expired after the stall", clock.now() - start < UI_STALL_MS);
+        long worst = 0;
+        for (int id = 1; id <= FLEET; id++) worst = Math.max(worst, lateness[id]);
+        assertTrue("worst lateness " + worst + " ms", worst <= MAX_LATENESS_MS);
+
+        // Every alarm gets its voice and every change reaches the UI once it wakes up
+        assertTrue("voices missing", voiced.await(FLEET * DECODE_MS + 5000, TimeUnit.MILLISECONDS));
+        long until = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < until) {
+            synchronized (delivered) {
+                if (delivered.cardinality() == FLEET) break;
+            }
+            Thread.sleep(10);
+        }
+        ui.interrupt();
+        ui.join(5000);
+        assertNull(failure.get());
+        synchronized (delivered) {
+            assertEquals(FLEET, delivered.cardinality());
+        }
+        synchronized (voices) {
+            assertEquals(FLEET, voices.cardinality());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class PcmCacheTest {
+    private static final long MB = 1024L * 1024;
+
+    private int loads;
+
+    // Clip of the given size in bytes, like the loader in SoundManager would decode
+    private static PcmClip clip(int bytes) {
+        return new PcmClip(new short[bytes / 2], 24000, 1);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws Exception {
+        PcmCache cache = new PcmCache(1000, id -> clip(300));
+        cache.get(1);
+        cache.get(2);
+        cache.get(3);
+        assertEquals(900, cache.getUsedBytes());
+
+        cache.get(1);            // 2 is now the least recently used
+        cache.get(4);
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(4));
+        assertEquals(900, cache.getUsedBytes());
+
+        // A clip of twice the size pushes out the two oldest, 3 then 1
+        cache.put(5, clip(600));
+        assertFalse(cache.contains(3));
+        assertFalse(cache.contains(1));
+        assertTrue(cache.contains(4));
+        assertEquals(900, cache.getUsedBytes());
+        assertTrue(cache.toString(), cache.toString().contains("evictions=3"));
+    }
+
+    @Test
+    public void bytesStayAccountedThroughReplaceAndOversizedClips() {
+        PcmCache cache = new PcmCache(1000, id -> null);
+        assertTrue(cache.put(1, clip(400)));
+        assertTrue(cache.put(2, clip(400)));
+        assertEquals(800, cache.getUsedBytes());
+
+        // Replacing a clip counts only the new one
+        assertTrue(cache.put(1, clip(200)));
+        assertEquals(600, cache.getUsedBytes());
+
+        // Larger than the whole budget: not kept, and the old entry for the id is gone
+        assertFalse(cache.put(2, clip(1200)));
+        assertFalse(cache.contains(2));
+        assertEquals(200, cache.getUsedBytes());
+        assertEquals(800, cache.getPeakBytes());
+    }
+
+    @Test
+    public void oversizedClipIsReturnedButNotKept() throws Exception {
+        PcmCache cache = new PcmCache(1000, id -> {
+            loads++;
+            return clip(2000);
+        });
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(1));
+        assertEquals(2, loads);
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void hitRateCountsEveryLookup() throws Exception {
+        PcmCache cache = new PcmCache(MB, id -> {
+            loads++;
+            return clip(1000);
+        });
+        assertEquals(0, cache.getHitRate(), 0);
+        assertNull(cache.getIfCached(1)); // A peek on a miss neither loads nor counts
+        assertEquals(0, loads);
+
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        assertSame(cache.get(2), cache.getIfCached(2));
+        // 2 misses (loads), 3 hits
+        assertEquals(2, loads);
+        assertEquals(3 / 5.0, cache.getHitRate(), 1e-9);
+    }
+
+    // The real clips decode to roughly 130-190 KB; ten of them do not fit in 1 MB
+    @Test
+    public void realisticFleetStaysUnderOneMegabyte() throws Exception {
+        Random random = new Random(3);
+        int[] sizes = new int[11];
+        for (int id = 1; id <= 10; id++) sizes[id] = 2 * (65000 + random.nextInt(30000));
+        PcmCache cache = new PcmCache(MB, id -> {
+            loads++;
+            return clip(sizes[id]);
+        });
+
+        // A working set of five clips fits, so after the first round every lookup hits
+        for (int round = 0; round < 20; round++) {
+            for (int id = 1; id <= 5; id++) cache.get(id);
+        }
+        assertEquals(5, loads);
+        assertEquals(95 / 100.0, cache.getHitRate(), 1e-9);
+
+        // The whole fleet in random order: evictions keep the cache under its budget
+        long total = 0;
+        for (int id = 1; id <= 10; id++) total += sizes[id];
+        assertTrue(total > MB);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(1 + random.nextInt(10));
+            assertTrue(cache.getUsedBytes() <= MB);
+        }
+        assertTrue(cache.getPeakBytes() <= MB);
+        assertTrue(loads > 10);
+
+        long cached = 0;
+        for (int id = 1; id <= 10; id++) {
+            if (cache.contains(id)) cached += sizes[id];
+        }
+        assertEquals(cached, cache.getUsedBytes());
+    }
+}
@@ -0,0 +1,96 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class PcmMixerTest {
+    private static final int RATE = 24000;
+    private static final int BLOCK = 480; // 20 ms, like AlarmAudioEngine
+
+    private static PcmClip constant(int value, int frames) {
+        short[] samples = new short[frames];
+        Arrays.fill(samples, (short) value);
+        return new PcmClip(samples, RATE, 1);
+    }
+
+    // Quiet sawtooth, each voice distinguishable and far from clipping
+    private static PcmClip ramp(int frames, int step) {
+        short[] samples = new short[frames];
+        for (int i = 0; i < frames; i++) samples[i] = (short) ((i * step) % 2000 - 1000);
+        return new PcmClip(samples, RATE, 1);
+    }
+
+    @Test
+    public void gainScalesItsVoiceOnly() {
+        PcmMixer mixer = new PcmMixer(RATE);
+        mixer.addVoice(1, constant(8000, 1000));
+        mixer.setGain(1, 0.5f);
+        short[] out = new short[BLOCK];
+        assertEquals(1, mixer.mix(out, 0, BLOCK));
+        for (short s : out) assertEquals(4000, s);
+
+        // A second voice at unity adds on top, the first stays halved
+        mixer.addVoice(2, constant(-2000, 1000));
+        mixer.mix(out, 0, BLOCK);
+        for (short s : out) assertEquals(2000, s);
+
+        mixer.setGain(1, 0f);
+        mixer.mix(out, 0, BLOCK);
+        for (short s : out) assertEquals(-2000, s);
+    }
+
+    // Full-scale voices in phase would sum far past 16 bits; the limiter scales
+    // the block down instead of letting samples wrap around
+    @Test
+    public void overlappingFullScaleVoicesAreLimitedNotWrapped() {
+        short[] square = new short[BLOCK];
+        for (int i = 0; i < BLOCK; i++) square[i] = (short) ((i / 20) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE);
+        for (int voices : new int[]{2, 3, 8}) {
+            PcmMixer mixer = new PcmMixer(RATE);
+            for (int id = 1; id <= voices; id++) mixer.addVoice(id, new PcmClip(square, RATE, 1));
+            short[] out = new short[BLOCK];
+            for (int block = 0; block < 5; block++) {
+                assertEquals(voices, mixer.mix(out, 0, BLOCK));
+                for (int i = 0; i < BLOCK; i++) {
+                    // Same sign as the source (no wrap), within range, and near full scale
+                    assertTrue(voices + " voices, sample " + i + ": " + out[i], square[i] > 0 ? out[i] > 30000 : out[i] < -30000);
+                    assertTrue(out[i] >= -Short.MAX_VALUE - 1 && out[i] <= Short.MAX_VALUE);
+                }
+            }
+        }
+    }
+
+    // Stopping one alarm must not restart or skip the others
+    @Test
+    public void removingAVoiceKeepsTheOthersPositions() {
+        PcmClip a = ramp(1000, 7);
+        PcmClip b = ramp(1300, 13);
+        PcmClip c = ramp(700, 3);
+        PcmMixer mixer = new PcmMixer(RATE);
+        mixer.addVoice(1, a);
+        mixer.addVoice(2, b);
+        mixer.addVoice(3, c);
+        // Reference: voices 1 and 3 alone, mixed for the same number of frames
+        PcmMixer reference = new PcmMixer(RATE);
+        reference.addVoice(1, a);
+        reference.addVoice(3, c);
+
+        short[] out = new short[BLOCK];
+        short[] expected = new short[BLOCK];
+        for (int block = 0; block < 3; block++) {
+            mixer.mix(out, 0, BLOCK);
+            reference.mix(expected, 0, BLOCK);
+        }
+        assertTrue(mixer.removeVoice(2));
+        for (int block = 0; block < 4; block++) {
+            mixer.mix(out, 0, BLOCK);
+            reference.mix(expected, 0, BLOCK);
+            assertArrayEquals("block " + block, expected, out);
+        }
+        assertEquals(2, mixer.getVoiceCount());
+    }
+}
@@ -0,0 +1,346 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+// PeerSync between several in-process devices over loopback sockets: plain
+// propagation, concurrent edits of one remote, a chain A - B - C, a device
+// rejoining after its peers moved on (log catch-up) and one rejoining after the
+// log wrapped (snapshot catch-up). Every device has its own engine clock offset,
+// so the wall clock conversion is exercised too.
+public class PeerSyncLoopbackTest {
+    private static final int FLEET = 20;
+    private static final long SETTLE_MS = 5000;
+    // Two conversions each read two clocks, allow a little slack
+    private static final long DEADLINE_SLACK_MS = 5;
+
+    // One device: engine thread, command bus, applier and sync node, like TimerService
+    static final class Device {
+        final String name;
+        final long offset;
+        final Clock clock;
+        final TimerStore store = new TimerStore(FLEET, 60000);
+        final TimerEngine engine;
+        final ExecutorService thread;
+        final CommandBus bus;
+        final CommandBatch batch = new CommandBatch();
+        final CommandApplier applier;
+        final PeerSync sync;
+        final List<SyncDelta> applied = Collections.synchronizedList(new ArrayList<>());
+        volatile int peers;
+
+        Device(String name, long offset, long origin) {
+            this.name = name;
+            this.offset = offset;
+            clock = () -> System.nanoTime() / 1000000L + offset;
+            engine = new TimerEngine(clock, store);
+            thread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "engine " + name);
+                t.setDaemon(true);
+                return t;
+            });
+            bus = new CommandBus(thread, this::drain);
+            SessionRecorder sessions = new SessionRecorder(clock, System::currentTimeMillis,
+                    (id, startWall, endWall, billed, ackDelay, pauses, reason) -> { }, FLEET);
+            applier = new CommandApplier(engine, sessions, new CommandApplier.Effects() {
+                @Override
+                public void onAlarmStopped(int remoteId) {
+                }
+
+                @Override
+                public void onRemoteChanged(int remoteId, int kind) {
+                }
+
+                @Override
+                public void onLocalChange(int remoteId, int ops) {
+                    publish(remoteId, ops);
+                }
+
+                @Override
+                public void onFleetResized() {
+                }
+            });
+            sync = new PeerSync(clock, System::currentTimeMillis, origin, 0, new PeerSync.Host() {
+                @Override
+                public void onDelta(SyncDelta delta) {
+                    thread.execute(() -> {
+                        if (!sync.isCurrent(delta)) return;
+                        applied.add(delta);
+                        long deadline = delta.state == TimerStore.STATE_RUNNING ? sync.toLocalDeadline(delta) : 0;
+                        applier.applyRemote(delta.remoteId, delta.ops, delta.state, deadline,
+                                delta.value, delta.defaultMillis);
+                    });
+                }
+
+                @Override
+                public void onPeersChanged(int count) {
+                    peers = count;
+                }
+            });
+        }
+
+        private void drain() {
+            bus.drainTo(batch);
+            if (!batch.isEmpty()) applier.apply(batch);
+        }
+
+        private void publish(int id, int ops) {
+            sync.publishLocal(id, ops, store.getState(id), store.getDeadline(id),
+                    store.getRemaining(id, clock.now()), store.getDefaultDuration(id));
+        }
+
+        // Waits until everything queued on the engine thread so far has run
+        void flush() throws InterruptedException {
+            CountDownLatch done = new CountDownLatch(1);
+            thread.execute(done::countDown);
+            done.await(SETTLE_MS, TimeUnit.MILLISECONDS);
+        }
+
+        void close() {
+            sync.close();
+            thread.shutdownNow();
+        }
+    }
+
+    private final List<Device> devices = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private long seed;
+
+    @After
+    public void closeAll() throws Exception {
+        for (Device d : devices) d.close();
+        for (Socket s : sockets) s.close();
+    }
+
+    private Device device(String name, long offset) {
+        Device d = new Device(name, offset, ++seed);
+        devices.add(d);
+        return d;
+    }
+
+    @Test
+    public void chainConvergesWithoutSendingTicks() throws Exception {
+        Device a = device("A", 0);
+        Device b = device("B", 123456789L);
+        Device c = device("C", -987654L);
+        int portA = a.sync.listen(0);
+        int portB = b.sync.listen(0);
+        b.sync.connect("127.0.0.1", portA);
+        c.sync.connect("127.0.0.1", portB); // Chain: C only hears A through B
+        awaitPeers(a, 1);
+        awaitPeers(b, 2);
+        awaitPeers(c, 1);
+
+        // Propagation, including the relay hop
+        a.bus.start(1);
+        b.bus.setDefault(2, 45000);
+        b.bus.start(2);
+        c.bus.extend(3, 30000);
+        assertConverged("propagation", a, b, c);
+
+        // Pausing a remote running elsewhere carries its remaining time over
+        Thread.sleep(200);
+        c.bus.pause(1);
+        assertConverged("pause", a, b, c);
+
+        // Concurrent edits of one remote: every device settles on the same winner
+        for (int round = 0; round < 20; round++) {
+            a.bus.start(5);
+            b.bus.reset(5);
+            c.bus.setDefault(5, 1000L * (round + 1));
+        }
+        assertConverged("conflicts", a, b, c);
+
+        // Nothing but state transitions goes over the wire, ticks are local
+        a.bus.start(6);
+        b.bus.start(7);
+        assertConverged("running", a, b, c);
+        long sent = countSent(a, b, c);
+        Thread.sleep(1500);
+        assertEquals("deltas sent while idle", sent, countSent(a, b, c));
+    }
+
+    @Test
+    public void rejoiningDeviceCatchesUpFromTheLog() throws Exception {
+        Device a = device("A", 0);
+        Device b = device("B", 123456789L);
+        Device c = device("C", -987654L);
+        int portB = b.sync.listen(0);
+        a.sync.connect("127.0.0.1", portB);
+        c.sync.connect("127.0.0.1", portB);
+        awaitPeers(b, 2);
+        a.bus.start(1);
+        c.bus.start(4);
+        assertConverged("before", a, b, c);
+
+        // C drops out, the others move on, a fresh C catches up from the logs
+        c.close();
+        awaitPeers(b, 1);
+        a.bus.reset(1);
+        b.bus.start(8);
+        Device c2 = device("C2", 555L);
+        c2.sync.connect("127.0.0.1", portB);
+        awaitPeers(c2, 1);
+        assertConverged("rejoin from log", a, b, c2);
+        assertEquals(0, b.sync.getSnapshotCount());
+    }
+
+    @Test
+    public void rejoiningAfterTheLogWrappedGetsASnapshot() throws Exception {
+        Device a = device("A", 0);
+        Device b = device("B", 123456789L);
+        int portB = b.sync.listen(0);
+        a.sync.connect("127.0.0.1", portB);
+        awaitPeers(b, 1);
+
+        for (int i = 0; i < PeerSync.LOG_CAPACITY + 100; i++) {
+            int id = 1 + i % FLEET;
+            // One command per batch, the bus would coalesce them otherwise
+            Device d = i % 2 == 0 ? a : b;
+            if (i % 2 == 0) d.bus.start(id); else d.bus.pause(id);
+            d.flush();
+        }
+        a.bus.stopAlarm(FLEET);
+        Device c = device("C", -42L);
+        c.sync.connect("127.0.0.1", portB);
+        awaitPeers(c, 1);
+        assertConverged("rejoin from snapshot", a, b, c);
+        assertTrue("log catch-up only", b.sync.getSnapshotCount() > 0);
+    }
+
+    // A peer whose deltas reach us reordered and twice (two relay paths): each one is
+    // applied and relayed exactly once, and the watermark moves over the early ones
+    @Test
+    public void outOfOrderAndDuplicateDeltasAreTakenInOnce() throws Exception {
+        Device a = device("A", 0);
+        Device b = device("B", 123456789L);
+        int portA = a.sync.listen(0);
+        b.sync.connect("127.0.0.1", portA);
+        awaitPeers(a, 1);
+
+        long peer = 0x7E57L;
+        Socket socket = new Socket("127.0.0.1", portA);
+        sockets.add(socket);
+        OutputStream out = socket.getOutputStream();
+        out.write(PeerSync.encode(PeerSync.FRAME_HELLO, o -> {
+            o.writeInt(PeerSync.MAGIC);
+            o.writeByte(PeerSync.PROTOCOL);
+            o.writeLong(peer);
+            SyncDelta.writeVarLong(o, 0);
+            PeerSync.writeVector(o, Collections.emptyMap());
+        }));
+        awaitPeers(a, 2);
+
+        long[] order = {1, 3, 3, 5, 2, 3, 2, 4, 5, 1, 4};
+        for (long seq : order) {
+            // Each seq sets the default of remote 10 + seq, so every delta wins its register
+            SyncDelta delta = new SyncDelta(peer, seq, seq, 10 + (int) seq, CommandBus.OP_SET_DEFAULT,
+                    TimerStore.STATE_IDLE, 1000 * seq, 1000 * seq);
+            out.write(PeerSync.encode(PeerSync.FRAME_DELTA, delta::write));
+        }
+        out.flush();
+
+        long until = System.currentTimeMillis() + SETTLE_MS;
+        while (b.sync.getReceivedCount() < 5 && System.currentTimeMillis() < until) Thread.sleep(10);
+        a.flush();
+        b.flush();
+        Thread.sleep(200); // Give stray duplicates time to arrive
+
+        assertEquals(5, a.sync.getReceivedCount());
+        assertEquals(5, b.sync.getReceivedCount());
+        assertEquals(5, a.applied.size());
+        assertEquals(5, b.applied.size());
+        for (int seq = 1; seq <= 5; seq++) {
+            SyncDelta register = b.sync.getRegister(10 + seq);
+            assertEquals(peer, register.origin);
+            assertEquals(seq, register.seq);
+            assertEquals(1000L * seq, b.store.getDefaultDuration(10 + seq));
+        }
+
+        // Watermark is at 5 now: a late copy of anything is still dropped
+        out.write(PeerSync.encode(PeerSync.FRAME_DELTA, new SyncDelta(peer, 4, 4, 14,
+                CommandBus.OP_SET_DEFAULT, TimerStore.STATE_IDLE, 4000, 4000)::write));
+        out.flush();
+        Thread.sleep(200);
+        assertEquals(5, a.sync.getReceivedCount());
+    }
+
+    private static long countSent(Device... devices) {
+        long total = 0;
+        for (Device d : devices) total += d.sync.getSentCount();
+        return total;
+    }
+
+    private static void awaitPeers(Device device, int peers) throws InterruptedException {
+        long until = System.currentTimeMillis() + SETTLE_MS;
+        while (device.peers != peers && System.currentTimeMillis() < until) Thread.sleep(10);
+        assertEquals(device.name + " peers", peers, device.peers);
+    }
+
+    // Waits for all devices to agree on every remote, then reports the first difference if they never do
+    private static void assertConverged(String name, Device... devices) throws InterruptedException {
+        long until = System.currentTimeMillis() + SETTLE_MS;
+        String diff;
+        do {
+            for (Device d : devices) d.flush();
+            diff = difference(devices);
+            if (diff == null) break;
+            Thread.sleep(20);
+        } while (System.currentTimeMillis() < until);
+        assertNull(name, diff);
+    }
+
+    private static String difference(Device... devices) {
+        Device first = devices[0];
+        for (int id = 1; id <= FLEET; id++) {
+            for (int i = 1; i < devices.length; i++) {
+                Device other = devices[i];
+                if (!sameVersion(first.sync.getRegister(id), other.sync.getRegister(id))) {
+                    return "#" + id + " register " + first.name + "=" + first.sync.getRegister(id)
+                            + " " + other.name + "=" + other.sync.getRegister(id);
+                }
+                String s1 = describe(first, id);
+                String s2 = describe(other, id);
+                if (!s1.equals(s2) && !closeDeadlines(first, other, id)) {
+                    return "#" + id + " " + first.name + "=" + s1 + " " + other.name + "=" + s2;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameVersion(SyncDelta x, SyncDelta y) {
+        if (x == null || y == null) return x == y;
+        return x.origin == y.origin && x.seq == y.seq;
+    }
+
+    private static String describe(Device d, int id) {
+        TimerSnapshot s = d.engine.snapshot();
+        return s.getState(id) + "/" + s.getDefaultDuration(id)
+                + (s.isRunning(id) ? "" : "/" + s.getRemaining(id, d.clock.now()));
+    }
+
+    // Running deadlines are compared in wall time, the engine clocks differ per device
+    private static boolean closeDeadlines(Device x, Device y, int id) {
+        TimerSnapshot sx = x.engine.snapshot();
+        TimerSnapshot sy = y.engine.snapshot();
+        if (!sx.isRunning(id) || !sy.isRunning(id)) return false;
+        if (sx.getDefaultDuration(id) != sy.getDefaultDuration(id)) return false;
+        long wx = sx.getDeadline(id) - x.offset;
+        long wy = sy.getDeadline(id) - y.offset;
+        return Math.abs(wx - wy) <= DEADLINE_SLACK_MS;
+    }
+}
@@ -0,0 +1,217 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// The rollups must always agree with the records, however the index was left behind.
+public class SessionLogTest {
+    private static final TimeZone ZONE = TimeZone.getTimeZone("Asia/Jakarta");
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long EPOCH = 1700000000000L;
+    private static final int REMOTES = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SessionLog log;
+    // Everything appended, in log order
+    private final List<long[]> written = new ArrayList<>(); // {remote, start, end, billed, ack}
+
+    @After
+    public void close() throws Exception {
+        if (log != null) log.close();
+    }
+
+    private SessionLog reopen() throws Exception {
+        if (log != null) log.close();
+        log = new SessionLog(folder.getRoot(), ZONE);
+        return log;
+    }
+
+    // Sessions ending every few minutes over several days, across the fleet
+    private void appendSessions(Random random, int count) throws Exception {
+        long end = written.isEmpty() ? EPOCH : written.get(written.size() - 1)[2];
+        for (int i = 0; i < count; i++) {
+            end += 1 + random.nextInt((int) (2 * HOUR));
+            int remote = 1 + random.nextInt(REMOTES);
+            long billed = random.nextInt((int) HOUR);
+            int ack = random.nextBoolean() ? random.nextInt(60000) : -1;
+            byte reason = ack >= 0 ? SessionLog.END_ACK : SessionLog.END_RESET;
+            long start = end - billed - random.nextInt(60000);
+            log.append(remote, start, end, billed, ack, random.nextInt(3), reason);
+            written.add(new long[]{remote, start, end, billed, ack});
+        }
+    }
+
+    // Sums straight from what was written, the reference for summarize
+    private SessionLog.Summary bruteForce(int fromDay, int toDay, int remote) {
+        SessionLog.Summary s = new SessionLog.Summary();
+        for (long[] w : written) {
+            int day = log.dayOf(w[2]);
+            if (day < fromDay || day > toDay || (remote > 0 && w[0] != remote)) continue;
+            s.sessions++;
+            s.billedMillis += w[3];
+            if (w[4] >= 0) {
+                s.ackSumMillis += w[4];
+                s.ackCount++;
+            }
+        }
+        return s;
+    }
+
+    private void assertSummariesMatch() {
+        int first = log.dayOf(written.get(0)[2]);
+        int last = log.dayOf(written.get(written.size() - 1)[2]);
+        for (int from = first - 1; from <= last + 1; from++) {
+            for (int to = from; to <= last + 1; to += 2) {
+                for (int remote = 0; remote <= REMOTES; remote++) {
+                    SessionLog.Summary expected = bruteForce(from, to, remote);
+                    SessionLog.Summary actual = log.summarize(from, to, remote);
+                    String where = "days " + from + ".." + to + " remote " + remote;
+                    assertEquals(where, expected.sessions, actual.sessions);
+                    assertEquals(where, expected.billedMillis, actual.billedMillis);
+                    assertEquals(where, expected.ackSumMillis, actual.ackSumMillis);
+                    assertEquals(where, expected.ackCount, actual.ackCount);
+                    assertEquals(where, to - from + 1, actual.days);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void summarizeMatchesABruteForceSum() throws Exception {
+        Random random = new Random(11);
+        assertEquals(0, reopen().open());
+        appendSessions(random, 300);
+        assertTrue(log.dayOf(written.get(299)[2]) - log.dayOf(written.get(0)[2]) >= 5);
+        assertEquals(300, log.size());
+        assertSummariesMatch();
+
+        // Same answers from the saved index after a clean close
+        assertEquals(0, reopen().open());
+        assertEquals(300, log.size());
+        assertSummariesMatch();
+    }
+
+    @Test
+    public void staleIndexOnlyScansTheTail() throws Exception {
+        Random random = new Random(12);
+        File index = new File(folder.getRoot(), "sessions.idx");
+        File stale = new File(folder.getRoot(), "stale.idx");
+        reopen().open();
+        appendSessions(random, 32); // The index is saved every 32 appends
+        Files.copy(index.toPath(), stale.toPath());
+        appendSessions(random, 20);
+        log.close();
+
+        // As if the process died before saving the index again
+        Files.copy(stale.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(20, reopen().open());
+        assertEquals(52, log.size());
+        assertSummariesMatch();
+
+        // Caught up and saved: nothing left to scan
+        assertEquals(0, reopen().open());
+
+        // No index at all: the whole log is scanned
+        log.close();
+        assertTrue(index.delete());
+        assertEquals(52, reopen().open());
+        assertSummariesMatch();
+    }
+
+    @Test
+    public void tornTrailingRecordIsCutOff() throws Exception {
+        Random random = new Random(13);
+        reopen().open();
+        appendSessions(random, 5);
+        log.close();
+        File file = new File(folder.getRoot(), "sessions.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[SessionLog.RECORD_BYTES / 2]); // Half a record, crash mid-write
+        }
+
+        assertEquals(0, reopen().open());
+        assertEquals(5, log.size());
+        assertEquals(5L * SessionLog.RECORD_BYTES, file.length());
+
+        // Appends continue on the record boundary
+        appendSessions(random, 1);
+        assertEquals(0, reopen().open());
+        assertEquals(6, log.size());
+        assertSummariesMatch();
+    }
+
+    // open() failed (or never ran) on the IO thread: appends fail as I/O errors
+    // the service already handles, and the report shows zeros
+    @Test
+    public void unopenedLogFailsCleanly() throws Exception {
+        reopen();
+        try {
+            log.append(1, EPOCH, EPOCH + HOUR, HOUR, -1, 0, SessionLog.END_RESET);
+            fail("append on an unopened log");
+        } catch (IOException expected) {
+            assertEquals("Session log not open", expected.getMessage());
+        }
+        try {
+            log.forEachSession(0, Integer.MAX_VALUE, 0, s -> fail("visited " + s.ordinal));
+            fail("forEachSession on an unopened log");
+        } catch (IOException expected) {
+            assertEquals("Session log not open", expected.getMessage());
+        }
+        int today = log.dayOf(EPOCH);
+        SessionLog.Summary summary = log.summarize(today, today, 0);
+        assertEquals(0, summary.sessions);
+        assertEquals(1, summary.days);
+        assertEquals(0, log.size());
+    }
+
+    @Test
+    public void forEachSessionWalksARemoteNewestFirst() throws Exception {
+        Random random = new Random(14);
+        reopen().open();
+        appendSessions(random, 200);
+        int first = log.dayOf(written.get(0)[2]);
+        int last = log.dayOf(written.get(written.size() - 1)[2]);
+        int from = first + 1;
+        int to = last - 1;
+
+        for (int remote = 1; remote <= REMOTES; remote++) {
+            List<Long> expected = new ArrayList<>();
+            for (int i = written.size() - 1; i >= 0; i--) {
+                long[] w = written.get(i);
+                int day = log.dayOf(w[2]);
+                if (w[0] == remote && day >= from && day <= to) expected.add(w[2]);
+            }
+            List<Long> visited = new ArrayList<>();
+            int id = remote;
+            log.forEachSession(from, to, remote, s -> {
+                assertEquals(id, s.remoteId);
+                visited.add(s.endWall);
+            });
+            assertEquals("remote " + remote, expected, visited);
+        }
+
+        // The fleet in log order
+        List<Long> all = new ArrayList<>();
+        log.forEachSession(from, to, 0, s -> all.add(s.endWall));
+        assertEquals(bruteForce(from, to, 0).sessions, all.size());
+        for (int i = 1; i < all.size(); i++) assertTrue(all.get(i - 1) <= all.get(i));
+    }
+}
@@ -0,0 +1,119 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class SessionRecorderTest {
+    private static final long WALL = 1700000000000L;
+
+    private long now = 5000;
+    private final List<long[]> closed = new ArrayList<>(); // {remote, startWall, endWall, billed, ack, pauses, reason}
+    private final SessionRecorder recorder = new SessionRecorder(() -> now, () -> WALL + now,
+            (id, startWall, endWall, billed, ack, pauses, reason) ->
+                    closed.add(new long[]{id, startWall, endWall, billed, ack, pauses, reason}), 4);
+
+    private long[] only() {
+        assertEquals(1, closed.size());
+        return closed.remove(0);
+    }
+
+    @Test
+    public void billsRunningTimeAcrossPauses() {
+        long startedAt = now;
+        recorder.onStart(1);
+        now += 10000;
+        recorder.onPause(1);
+        now += 60000;            // Paused time is not billed
+        recorder.onPause(1);     // Repeated pause changes nothing
+        recorder.onStart(1);
+        now += 7000;
+        recorder.onPause(1);
+        recorder.onStart(1);
+        now += 3000;
+        recorder.onReset(1);
+
+        long[] s = only();
+        assertEquals(1, s[0]);
+        assertEquals(WALL + startedAt, s[1]);
+        assertEquals(WALL + now, s[2]);
+        assertEquals(20000, s[3]);
+        assertEquals(-1, s[4]);
+        assertEquals(2, s[5]);
+        assertEquals(SessionLog.END_RESET, s[6]);
+
+        // A reset with nothing open records nothing
+        recorder.onReset(1);
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void ackDelayRunsFromTheDeadline() {
+        recorder.onStart(2);
+        now += 30000;
+        long deadline = now;
+        now += 150;              // The engine noticed the expiry a little late
+        recorder.onExpired(2, deadline);
+        now += 4000;
+        recorder.onStopAlarm(2);
+
+        long[] s = only();
+        assertEquals(30000, s[3]); // Billed up to the deadline, not the late tick
+        assertEquals(4150, s[4]);
+        assertEquals(SessionLog.END_ACK, s[6]);
+
+        // STOP_ALARM without an alarm is ignored
+        recorder.onStart(2);
+        recorder.onStopAlarm(2);
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void startingFromTheAlarmClosesWithRestart() {
+        recorder.onStart(3);
+        now += 60000;
+        recorder.onExpired(3, now);
+        now += 2000;
+        recorder.onStart(3);
+
+        long[] s = only();
+        assertEquals(60000, s[3]);
+        assertEquals(2000, s[4]);
+        assertEquals(SessionLog.END_RESTART, s[6]);
+
+        // The next rental is its own session, billed from the restart
+        now += 5000;
+        recorder.onReset(3);
+        s = only();
+        assertEquals(5000, s[3]);
+        assertEquals(-1, s[4]);
+        assertEquals(WALL + now - 5000, s[1]);
+        assertEquals(SessionLog.END_RESET, s[6]);
+    }
+
+    @Test
+    public void shrinkingTheFleetDropsOpenSessions() {
+        recorder.onStart(1);
+        recorder.onStart(3);
+        recorder.onStart(4);
+        now += 8000;
+        recorder.onPause(4);
+        now += 1000;
+        recorder.resize(2);
+
+        assertEquals(2, closed.size());
+        for (long[] s : closed) {
+            assertEquals(SessionLog.END_DROPPED, s[6]);
+            assertEquals(s[0] == 3 ? 9000 : 8000, s[3]);
+        }
+        closed.clear();
+
+        // Remote 1 is untouched and keeps billing
+        now += 1000;
+        recorder.onReset(1);
+        assertEquals(10000, only()[3]);
+    }
+}
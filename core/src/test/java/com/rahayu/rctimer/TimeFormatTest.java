@@ -0,0 +1,44 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimeFormatTest {
+    private final char[] buffer = new char[TimeFormat.MAX_LENGTH];
+
+    private String format(long millis) {
+        return new String(buffer, 0, TimeFormat.format(millis, buffer));
+    }
+
+    // A countdown rounds up: 00:00 only once the deadline has passed
+    @Test
+    public void roundsUpToTheNextWholeSecond() {
+        assertEquals("00:00", format(0));
+        assertEquals("00:00", format(-250));
+        assertEquals("00:01", format(1));
+        assertEquals("00:01", format(1000));
+        assertEquals("00:02", format(1001));
+        assertEquals("01:00", format(59001));
+        assertEquals("01:00:00", format(3600000));
+        assertEquals("01:00:01", format(3600001));
+        assertEquals("99:59:59", format(Long.MAX_VALUE));
+        assertEquals(1, TimeFormat.displaySeconds(999));
+        assertEquals(0, TimeFormat.displaySeconds(0));
+    }
+
+    // The delay lands exactly where displaySeconds changes
+    @Test
+    public void nextChangeDelayLandsOnTheBoundary() {
+        assertEquals(0, TimeFormat.nextChangeDelay(0));
+        assertEquals(500, TimeFormat.nextChangeDelay(500));
+        assertEquals(1000, TimeFormat.nextChangeDelay(1000));
+        assertEquals(1, TimeFormat.nextChangeDelay(2001));
+        for (long left = 1; left <= 5000; left++) {
+            long delay = TimeFormat.nextChangeDelay(left);
+            long shown = TimeFormat.displaySeconds(left);
+            assertEquals("left " + left, shown, TimeFormat.displaySeconds(left - delay + 1));
+            assertEquals("left " + left, shown - 1, TimeFormat.displaySeconds(left - delay));
+        }
+    }
+}
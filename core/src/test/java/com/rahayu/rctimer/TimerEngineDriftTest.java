@@ -0,0 +1,102 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+// Hours of virtual time with late, jittery ticks: expiries may be as late as the
+// tick that notices them, but never later, and the lateness never accumulates.
+public class TimerEngineDriftTest {
+    private static final long HOURS = 8;
+    private static final long MAX_JITTER_MS = 250;
+    private static final long STALL_MS = 3000;   // Occasional long stall (GC, Doze)
+    private static final int FLEET = 40;
+    private static final int LONG = 1;           // Runs 6 h straight
+    private static final int PAUSED = 2;         // Paused and resumed every few minutes
+    private static final long LONG_MILLIS = 6 * 60 * 60 * 1000L;
+    private static final long PAUSED_MILLIS = 90 * 60 * 1000L;
+
+    private long now = 1000;
+    private long worstLateness;
+    private long expirations;
+    private long longExpiredAt = -1;
+    private long pausedExpiredAt = -1;
+    private final long[] startedAt = new long[FLEET + 1];
+    private final long[] duration = new long[FLEET + 1];
+
+    @Test
+    public void jitteredTicksDoNotDrift() {
+        Random random = new Random(42);
+        TimerStore store = new TimerStore(FLEET, 60000);
+        TimerEngine engine = new TimerEngine(() -> now, store);
+        engine.setListener(id -> {
+            long lateness = now - store.getDeadline(id);
+            assertTrue("expired early: " + lateness, lateness >= 0);
+            worstLateness = Math.max(worstLateness, lateness);
+            expirations++;
+            if (id == LONG) longExpiredAt = now;
+            if (id == PAUSED) pausedExpiredAt = now;
+        });
+
+        engine.setDefaultTime(LONG, LONG_MILLIS);
+        engine.start(LONG);
+        startedAt[LONG] = now;
+        engine.setDefaultTime(PAUSED, PAUSED_MILLIS);
+        engine.start(PAUSED);
+        for (int id = 3; id <= FLEET; id++) {
+            duration[id] = 60000 + random.nextInt(20 * 60000);
+            engine.setDefaultTime(id, duration[id]);
+            engine.start(id);
+            startedAt[id] = now;
+        }
+
+        long pausedRunning = 0;
+        long pausedSince = now;
+        long toggleAt = now + 7 * 60000;
+        long end = now + HOURS * 60 * 60 * 1000L;
+        while (now < end) {
+            long delay = engine.nextTickDelay();
+            if (delay < 0) delay = 1000;
+            long jitter = random.nextInt(50) == 0 ? STALL_MS : random.nextInt((int) MAX_JITTER_MS + 1);
+            now += delay + jitter;
+            engine.tick();
+
+            // Short rentals restart as soon as they ring; each new deadline is start + duration exactly
+            for (int id = 3; id <= FLEET; id++) {
+                if (store.isAlarming(id)) {
+                    assertTrue(now - (startedAt[id] + duration[id]) <= STALL_MS + MAX_JITTER_MS);
+                    engine.reset(id);
+                    engine.start(id);
+                    startedAt[id] = now;
+                    assertEquals(now + duration[id], store.getDeadline(id));
+                }
+            }
+
+            if (pausedExpiredAt < 0 && now >= toggleAt) {
+                if (store.isRunning(PAUSED)) {
+                    pausedRunning += now - pausedSince;
+                    engine.pause(PAUSED);
+                } else {
+                    pausedSince = now;
+                    engine.start(PAUSED);
+                }
+                toggleAt = now + 5 * 60000 + random.nextInt(4 * 60000);
+            }
+        }
+
+        assertTrue("no expirations", expirations > 100);
+        assertTrue("worst lateness " + worstLateness, worstLateness <= STALL_MS + MAX_JITTER_MS);
+
+        // Six hours of ticks leave the long rental exactly one tick late at most
+        assertTrue(longExpiredAt >= startedAt[LONG] + LONG_MILLIS);
+        assertTrue(longExpiredAt - (startedAt[LONG] + LONG_MILLIS) <= STALL_MS + MAX_JITTER_MS);
+
+        // Pauses bank the exact remaining time: total running time is the duration, plus one tick
+        assertTrue("paused rental never expired", pausedExpiredAt > 0);
+        long ran = pausedRunning + (pausedExpiredAt - pausedSince);
+        assertTrue("ran " + ran, ran >= PAUSED_MILLIS);
+        assertTrue("ran " + ran, ran - PAUSED_MILLIS <= STALL_MS + MAX_JITTER_MS);
+    }
+}
@@ -0,0 +1,157 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Crash recovery: whatever happens to the tail of the journal, replay comes back
+// with the last state that was completely written.
+public class TimerJournalTest {
+    private static final int FLEET = 5;
+    private static final long DEFAULT = 15 * 60 * 1000L;
+    // One remote record on disk: [length][crc] + type, id, state, value, default
+    private static final int REMOTE_FRAME = 8 + 1 + 4 + 1 + 8 + 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private long now = 1000000L;
+    private final long epoch = 1700000000000L;
+    private final Clock elapsed = () -> now;
+    private final Clock wall = () -> epoch + now;
+
+    // State after the last complete record
+    private TimerSnapshot good;
+
+    @Before
+    public void writeJournal() throws Exception {
+        file = new File(folder.getRoot(), "timers.journal");
+        TimerStore store = new TimerStore(FLEET, DEFAULT);
+        TimerJournal journal = new TimerJournal(file, store, elapsed, wall);
+        journal.recover();
+        awaitCompaction(journal);
+
+        store.start(1, now);
+        journal.record(1);
+        store.setDefaultDuration(2, 20 * 60 * 1000L, now);
+        journal.record(2);
+        store.start(3, now);
+        now += 60000;
+        store.pause(3, now);
+        journal.record(3);
+        good = store.publish();
+
+        // The record the tests damage: remote 2 starts
+        store.start(2, now);
+        journal.record(2);
+        journal.close();
+        assertNull(journal.getFailure());
+    }
+
+    @Test
+    public void intactJournalRestoresEverything() throws Exception {
+        TimerSnapshot restored = recover();
+        assertEquals(TimerStore.STATE_RUNNING, restored.getState(2));
+        assertEquals(now + 20 * 60 * 1000L, restored.getDeadline(2));
+    }
+
+    @Test
+    public void recordTruncatedMidWriteIsDropped() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - REMOTE_FRAME / 2);
+        }
+        assertSameState(good, recover());
+    }
+
+    @Test
+    public void recordWithBadCrcIsDropped() throws Exception {
+        flipByte(file.length() - REMOTE_FRAME + 4);
+        assertSameState(good, recover());
+    }
+
+    @Test
+    public void corruptionStopsReplayAtTheDamagedRecord() throws Exception {
+        // Damage the record of remote 3, everything after it (remote 2 starting) goes too
+        flipByte(file.length() - 2 * REMOTE_FRAME + 4);
+        TimerSnapshot restored = recover();
+        assertEquals(TimerStore.STATE_IDLE, restored.getState(3));
+        assertEquals(DEFAULT, restored.getRemaining(3, now));
+        assertEquals(TimerStore.STATE_IDLE, restored.getState(2));
+        assertEquals(TimerStore.STATE_RUNNING, restored.getState(1));
+        assertEquals(good.getDeadline(1), restored.getDeadline(1));
+    }
+
+    @Test
+    public void interruptedCompactionLeavesTheJournalUsable() throws Exception {
+        // Killed while writing the temp image: a torn .tmp next to an intact journal
+        byte[] journal = Files.readAllBytes(file.toPath());
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), Arrays.copyOf(journal, journal.length / 2));
+
+        TimerStore store = new TimerStore(FLEET, DEFAULT);
+        TimerJournal recovered = new TimerJournal(file, store, elapsed, wall);
+        recovered.recover();
+        assertEquals(TimerStore.STATE_RUNNING, store.snapshot().getState(2));
+        assertSameState(good, store.snapshot(), 1, 3);
+
+        // The next compaction replaces the leftover and the result replays the same
+        awaitCompaction(recovered);
+        recovered.close();
+        assertFalse(temp.exists());
+        TimerSnapshot again = recover();
+        assertSameState(store.snapshot(), again, 1, 2, 3, 4, 5);
+    }
+
+    private TimerSnapshot recover() throws IOException {
+        TimerStore store = new TimerStore(FLEET, DEFAULT);
+        TimerJournal journal = new TimerJournal(file, store, elapsed, wall);
+        journal.recover();
+        journal.close();
+        return store.snapshot();
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    private static void awaitCompaction(TimerJournal journal) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000;
+        while (journal.getCompactionCount() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        assertTrue("journal never compacted", journal.getCompactionCount() > 0);
+    }
+
+    private void assertSameState(TimerSnapshot expected, TimerSnapshot actual) {
+        assertSameState(expected, actual, 1, 2, 3, 4, 5);
+    }
+
+    private void assertSameState(TimerSnapshot expected, TimerSnapshot actual, int... ids) {
+        assertEquals(expected.size(), actual.size());
+        for (int id : ids) {
+            assertEquals("state of " + id, expected.getState(id), actual.getState(id));
+            assertEquals("remaining of " + id, expected.getRemaining(id, now), actual.getRemaining(id, now));
+            assertEquals("default of " + id, expected.getDefaultDuration(id), actual.getDefaultDuration(id));
+            if (expected.isRunning(id)) {
+                assertEquals("deadline of " + id, expected.getDeadline(id), actual.getDeadline(id));
+            }
+        }
+    }
+}
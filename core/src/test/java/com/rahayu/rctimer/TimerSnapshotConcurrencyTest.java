@@ -0,0 +1,71 @@
+package com.rahayu.rctimer;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+// One writer batching changes through the engine, several lock-free readers:
+// a reader must always see a whole batch (never half of one) and versions that
+// only move forward.
+public class TimerSnapshotConcurrencyTest {
+    private static final int FLEET = 200;
+    private static final int READERS = 4;
+    private static final long RUN_MS = 1500;
+
+    @Test
+    public void readersNeverSeeTornOrOlderSnapshots() throws Exception {
+        TimerStore store = new TimerStore(FLEET, 0);
+        TimerEngine engine = new TimerEngine(() -> 0, store);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        long until = System.currentTimeMillis() + RUN_MS;
+        CountDownLatch done = new CountDownLatch(READERS + 1);
+
+        // Batch k sets every remote's default to k, so a consistent snapshot holds one k only
+        Thread writer = new Thread(() -> {
+            long k = 0;
+            while (System.currentTimeMillis() < until && failure.get() == null) {
+                long value = ++k;
+                engine.batch(() -> {
+                    for (int id = 1; id <= FLEET; id++) engine.setDefaultTime(id, value);
+                });
+            }
+            done.countDown();
+        }, "writer");
+
+        Runnable reader = () -> {
+            long lastVersion = 0;
+            long lastValue = 0;
+            while (System.currentTimeMillis() < until && failure.get() == null) {
+                TimerSnapshot snapshot = store.snapshot();
+                long value = snapshot.getDefaultDuration(1);
+                for (int id = 2; id <= FLEET; id++) {
+                    if (snapshot.getDefaultDuration(id) != value) {
+                        failure.compareAndSet(null, "torn snapshot v" + snapshot.version() + ": #1=" + value
+                                + " #" + id + "=" + snapshot.getDefaultDuration(id));
+                    }
+                }
+                if (snapshot.version() < lastVersion || value < lastValue) {
+                    failure.compareAndSet(null, "went back from v" + lastVersion + " to v" + snapshot.version());
+                }
+                lastVersion = snapshot.version();
+                lastValue = value;
+                reads.incrementAndGet();
+            }
+            done.countDown();
+        };
+
+        writer.start();
+        for (int i = 0; i < READERS; i++) new Thread(reader, "reader " + i).start();
+        assertTrue(done.await(RUN_MS + 10000, TimeUnit.MILLISECONDS));
+
+        assertNull(failure.get());
+        assertTrue("writer published nothing", store.version() > 100);
+        assertTrue("readers read nothing", reads.get() > 100);
+    }
+}